@@ -0,0 +1,125 @@
+public class AudioBenchmark {
+
+    // delay line lengths of the GuitarHero keyboard, 37 notes from 110 Hz
+    private static int[] lengths(int voices) {
+        int[] lengths = new int[voices];
+        for (int i = 0; i < voices; i++) {
+            double frequency = 440 * Math.pow(2, ((double) (i % 37 - 24) / 12));
+            lengths[i] = (int) Math.ceil(44100 / frequency);
+        }
+        return lengths;
+    }
+
+    // one Karplus-Strong step per voice per sample through the RingBuffer API
+    private static void benchmarkRingBuffer(int voices, int samples) {
+        int[] lengths = lengths(voices);
+        RingBuffer[] buffers = new RingBuffer[voices];
+        for (int v = 0; v < voices; v++) {
+            buffers[v] = new RingBuffer(lengths[v]);
+            for (int i = 0; i < lengths[v]; i++)
+                buffers[v].enqueue(StdRandom.uniform(-0.5, 0.5));
+        }
+        Stopwatch timer = new Stopwatch();
+        double checksum = 0.0;
+        for (int t = 0; t < samples; t++) {
+            for (int v = 0; v < voices; v++) {
+                double val1 = buffers[v].dequeue();
+                double val2 = buffers[v].peek();
+                buffers[v].enqueue(0.996 * (val1 + val2) / 2.0);
+                checksum += val2;
+            }
+        }
+        report("RingBuffer", voices, samples, timer.elapsedTime(), checksum);
+    }
+
+    // GuitarHero's inner loop: sample() and tic() on every string per sample
+    private static void benchmarkTic(int voices, int samples) {
+        GuitarString[] strings = strings(voices);
+        Stopwatch timer = new Stopwatch();
+        double checksum = 0.0;
+        for (int t = 0; t < samples; t++) {
+            double sample = 0.0;
+            for (int v = 0; v < voices; v++) {
+                sample += strings[v].sample();
+                strings[v].tic();
+            }
+            checksum += sample;
+        }
+        report("GuitarString.tic", voices, samples, timer.elapsedTime(), checksum);
+    }
+
+    // the same mix rendered a block of samples per string at a time
+    private static void benchmarkRender(int voices, int samples, int block) {
+        GuitarString[] strings = strings(voices);
+        double[] out = new double[block];
+        Stopwatch timer = new Stopwatch();
+        double checksum = 0.0;
+        for (int t = 0; t < samples; t += block) {
+            java.util.Arrays.fill(out, 0.0);
+            for (int v = 0; v < voices; v++)
+                strings[v].render(out, 0, block);
+            for (int i = 0; i < block; i++)
+                checksum += out[i];
+        }
+        report("GuitarString.render " + block, voices, samples,
+               timer.elapsedTime(), checksum);
+    }
+
+    // an 88-string keyboard with a few notes sounding, rendered through a
+    // VoicePool so only the sounding strings cost time; the notes are
+    // plucked again whenever the pool lets go of them
+    private static void benchmarkPool(int notes, int samples, int block) {
+        GuitarString[] strings = new GuitarString[88];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = new GuitarString(27.5 * Math.pow(2, i / 12.0));
+        VoicePool pool = new VoicePool(strings);
+        double[] out = new double[block];
+        Stopwatch timer = new Stopwatch();
+        double checksum = 0.0;
+        for (int t = 0; t < samples; t += block) {
+            if (pool.size() < notes)
+                for (int n = 0; n < notes; n++)
+                    pool.pluck(24 + 7 * n % 64);
+            java.util.Arrays.fill(out, 0.0);
+            pool.render(out, 0, block);
+            checksum += out[0];
+        }
+        report("VoicePool 88 keys", notes, samples, timer.elapsedTime(), checksum);
+    }
+
+    // plucked strings of the GuitarHero keyboard, repeated to fill voices
+    private static GuitarString[] strings(int voices) {
+        GuitarString[] strings = new GuitarString[voices];
+        for (int v = 0; v < voices; v++) {
+            strings[v] = new GuitarString(440 * Math.pow(2, ((double) (v % 37 - 24) / 12)));
+            strings[v].pluck();
+        }
+        return strings;
+    }
+
+    // prints throughput as voice-samples per second and real-time voices
+    private static void report(String name, int voices, int samples,
+                               double elapsed, double checksum) {
+        StdOut.printf("%-26s %6.1f M voice-samples/sec, %5.1f voices in real time"
+                      + " (checksum %.3f)\n", name, voices * (samples / elapsed) / 1e6,
+                      voices * (samples / elapsed) / 44100, checksum);
+    }
+
+    // compares RingBuffer with GuitarString's tic() and render(),
+    // on a keyboard of strings; each benchmark runs once to warm up and
+    // once to be timed
+    // usage: java AudioBenchmark 37 10
+    public static void main(String[] args) {
+        int voices = Integer.parseInt(args[0]);
+        int seconds = Integer.parseInt(args[1]);
+        int samples = seconds * 44100;
+
+        for (int run = 0; run < 2; run++) {
+            if (run == 1) StdOut.println();
+            benchmarkRingBuffer(voices, samples);
+            benchmarkTic(voices, samples);
+            benchmarkRender(voices, samples, 512);
+            benchmarkPool(Math.min(voices, 64), samples, 512);
+        }
+    }
+}
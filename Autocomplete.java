@@ -1,23 +1,54 @@
+import java.util.ArrayList;
 import java.util.Arrays;
-import edu.princeton.cs.algs4.In;
+import java.util.List;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
 
+// Autocomplete is immutable once constructed: the constructor sorts a
+// private copy of the terms, and every query method only reads shared
+// state and keeps its working space in local variables. It is therefore
+// safe to query one instance from many threads without locking.
 public class Autocomplete {
     
-    // create immutable private instance variable
+    // create immutable private instance variables
     private final Term[] terms;
+    // optional range-maximum index over the weights (null if not built)
+    private final RangeMaxIndex weightIndex;
+    // the weights of terms, as read by the bounded heap
+    private final Weights weights = new Weights() {
+        public long weight(int i) {
+            return terms[i].weight();
+        }
+    };
+    
+    // Weights of a dictionary in sorted order, by index. Lets other
+    // dictionaries that keep their terms in sorted order, such as
+    // MappedAutocomplete, share the bounded top-k selection.
+    interface Weights {
+        long weight(int i);
+    }
     
     // Initializes the data structure from the given array of terms.
     public Autocomplete(Term[] terms) {
-        // initiate instance variables
-        this.terms = terms;
-        
+        this(terms, false);
+    }
+    
+    // Initializes the data structure from the given array of terms,
+    // and, if indexWeights is true, builds a range-maximum index over
+    // the weights so that topK() does not depend on the number of matches.
+    public Autocomplete(Term[] terms, boolean indexWeights) {
         // throw exception if argument array is null
         if (terms == null) throw new java.lang.NullPointerException(); 
         
+        // copy the array so the caller cannot change it under readers
+        this.terms = terms.clone();
+        
         // sort terms array in lexicographic order
-        Arrays.sort(terms); 
+        Arrays.sort(this.terms); 
+        
+        // index the weights in sorted order
+        if (indexWeights) weightIndex = new RangeMaxIndex(this.terms);
+        else              weightIndex = null;
     }
     
     // Returns all terms that start with the given prefix, 
@@ -26,15 +57,10 @@ public class Autocomplete {
         // throw exception if prefix string is null
         if (prefix == null) throw new java.lang.NullPointerException();
         
-        // create new term using given prefix
-        Term prefixTerm = new Term(prefix, Integer.MAX_VALUE);
-        
-        // binary search for the index of the first term with the given term
-        int firstTerm = BinarySearchDeluxe.firstIndexOf(terms, 
-                       prefixTerm, Term.byPrefixOrder(prefix.length()));
-        // binary search for the index of the last term with the given term
-        int lastTerm = BinarySearchDeluxe.lastIndexOf(terms, 
-                       prefixTerm, Term.byPrefixOrder(prefix.length()));
+        // binary search for the index of the first term with the given prefix
+        int firstTerm = firstIndexOf(prefix);
+        // binary search for the index of the last term with the given prefix
+        int lastTerm = lastIndexOf(prefix);
         // find the length different between the first and last terms
         int startTerm = firstTerm;
         int length;
@@ -54,55 +80,244 @@ public class Autocomplete {
         return newTerms;          
     }
     
+    // Returns the k heaviest terms that start with the given prefix, in
+    // the same order as allMatches(). Keeps a bounded heap of k indices
+    // instead of sorting every match, so it takes time proportional to
+    // m log k and extra space proportional to k, for m matching terms.
+    // With the weight index it takes time proportional to k log N instead.
+    public Term[] topK(String prefix, int k) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+        
+        // find the range of matching terms
+        int firstTerm = firstIndexOf(prefix);
+        if (firstTerm == -1 || k == 0) return new Term[0];
+        int lastTerm = lastIndexOf(prefix);
+        return top(firstTerm, lastTerm, k);
+    }
+    
+    // the k heaviest terms in terms[firstTerm..lastTerm], in allMatches() order
+    private Term[] top(int firstTerm, int lastTerm, int k) {
+        // split the range around its maximum if the weights are indexed
+        if (weightIndex != null) {
+            int[] indices = weightIndex.top(firstTerm, lastTerm, k);
+            Term[] top = new Term[indices.length];
+            for (int i = 0; i < indices.length; i++)
+                top[i] = terms[indices[i]];
+            return top;
+        }
+        
+        int[] indices = top(weights, firstTerm, lastTerm, k);
+        Term[] top = new Term[indices.length];
+        for (int i = 0; i < indices.length; i++)
+            top[i] = terms[indices[i]];
+        return top;
+    }
+    
+    // Returns the indices of the k heaviest of the terms lo..hi in
+    // allMatches() order (descending weight, then sorted order). Keeps a
+    // bounded heap of k indices, so it takes time proportional to
+    // m log k and extra space proportional to k, for m = hi - lo + 1.
+    static int[] top(Weights weights, int lo, int hi, int k) {
+        int n = Math.min(k, hi - lo + 1);
+        // heap of indices with the worst kept term at the root
+        int[] heap = new int[n];
+        int size = 0;
+        for (int i = lo; i <= hi; i++) {
+            if (size < n) {
+                heap[size] = i;
+                swim(weights, heap, size);
+                size++;
+            }
+            else if (outranks(weights, i, heap[0])) {
+                heap[0] = i;
+                sink(weights, heap, 0, size);
+            }
+        }
+        
+        // remove the worst term repeatedly, filling the result from the back
+        int[] top = new int[n];
+        for (int t = n - 1; t >= 0; t--) {
+            top[t] = heap[0];
+            size--;
+            heap[0] = heap[size];
+            sink(weights, heap, 0, size);
+        }
+        return top;
+    }
+    
+    // Returns the k heaviest terms for each of the given prefixes, in the
+    // order of the list. The prefixes are handled in sorted order so that
+    // each binary search starts where the previous one ended, and a prefix
+    // that extends the previous one only searches inside its range.
+    public List<Term[]> allMatches(List<String> prefixes, int k) {
+        // throw exceptions for corner cases
+        if (prefixes == null) throw new java.lang.NullPointerException();
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+        int n = prefixes.size();
+        final String[] keys = new String[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = prefixes.get(i);
+            if (keys[i] == null) throw new java.lang.NullPointerException();
+            order[i] = i;
+        }
+        
+        // visit the prefixes in lexicographic order
+        Arrays.sort(order, new java.util.Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+        
+        Term[][] results = new Term[n][];
+        String previous = null;
+        int lo = 0;                 // lower bound of the previous prefix
+        int hi = terms.length;      // upper bound of the previous prefix
+        for (int i = 0; i < n; i++) {
+            String prefix = keys[order[i]];
+            if (previous != null && prefix.equals(previous)) {
+                results[order[i]] = results[order[i - 1]].clone();
+                continue;
+            }
+            
+            // a longer prefix matches a subrange of the shorter one
+            if (previous == null || !prefix.startsWith(previous))
+                hi = terms.length;
+            lo = lowerBound(prefix, lo, hi);
+            hi = upperBound(prefix, lo, hi);
+            if (lo == hi || k == 0) results[order[i]] = new Term[0];
+            else results[order[i]] = top(lo, hi - 1, k);
+            previous = prefix;
+        }
+        
+        List<Term[]> list = new ArrayList<Term[]>(n);
+        for (int i = 0; i < n; i++)
+            list.add(results[i]);
+        return list;
+    }
+    
+    // first index in [lo, hi) whose query is not less than the prefix
+    private int lowerBound(String prefix, int lo, int hi) {
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (terms[mid].compareToPrefix(prefix) < 0) lo = mid + 1;
+            else                                        hi = mid;
+        }
+        return lo;
+    }
+    
+    // first index in [lo, hi) whose query is greater than the prefix
+    private int upperBound(String prefix, int lo, int hi) {
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (terms[mid].compareToPrefix(prefix) <= 0) lo = mid + 1;
+            else                                         hi = mid;
+        }
+        return lo;
+    }
+    
+    // does the term at index i come before the term at index j in
+    // allMatches() order (descending weight, then sorted order)?
+    private static boolean outranks(Weights weights, int i, int j) {
+        long wi = weights.weight(i);
+        long wj = weights.weight(j);
+        if (wi != wj) return wi > wj;
+        return i < j;
+    }
+    
+    // heap helpers, ordered so that the root is outranked by every other entry
+    private static void swim(Weights weights, int[] heap, int i) {
+        while (i > 0 && outranks(weights, heap[(i - 1) / 2], heap[i])) {
+            int parent = (i - 1) / 2;
+            int swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
+    
+    private static void sink(Weights weights, int[] heap, int i, int size) {
+        while (2*i + 1 < size) {
+            int child = 2*i + 1;
+            if (child + 1 < size && outranks(weights, heap[child], heap[child + 1])) child++;
+            if (!outranks(weights, heap[i], heap[child])) break;
+            int swap = heap[i];
+            heap[i] = heap[child];
+            heap[child] = swap;
+            i = child;
+        }
+    }
+    
     // Returns the number of terms that start with the given prefix.
     public int numberOfMatches(String prefix) {
         // throw exception if prefix string is null
         if (prefix == null) throw new java.lang.NullPointerException();
         
-        // create new term using given prefix
-        Term prefixTerm = new Term(prefix, Integer.MAX_VALUE);
+        // binary search for the index of the first term with the given prefix
+        int firstTerm = firstIndexOf(prefix);
+        // no match, so no need to search for the last term
+        if (firstTerm == -1) return 0;
+        // binary search for the index of the last term with the given prefix
+        int lastTerm = lastIndexOf(prefix);
+        return lastTerm - firstTerm + 1;
+    }
+    
+    // Returns the index of the first term that starts with the given
+    // prefix, or -1 if there is no such term. Compares characters in
+    // place, so no probe term or substrings are allocated.
+    public int firstIndexOf(String prefix) {
+        // throw exception if prefix string is null
+        if (prefix == null) throw new java.lang.NullPointerException();
         
-        // binary search for the index of the first term with the given term
-        int firstTerm = BinarySearchDeluxe.firstIndexOf(terms, 
-                        prefixTerm, Term.byPrefixOrder(prefix.length()));
-        // binary search for the index of the last term with the given term
-        int lastTerm = BinarySearchDeluxe.lastIndexOf(terms, 
-                        prefixTerm, Term.byPrefixOrder(prefix.length()));
-        // find the length different between the first and last terms
-        int length;
-        if (firstTerm == -1 && lastTerm == -1) {
-            length = 0;
+        int lo = 0;
+        int hi = terms.length - 1;
+        int index = -1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int cmp = terms[mid].compareToPrefix(prefix);
+            if      (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            // keep searching to the left for an earlier match
+            else { index = mid; hi = mid - 1; }
         }
-        else {
-            length = lastTerm - firstTerm + 1; }         
-        return length;
+        return index;
+    }
+    
+    // Returns the index of the last term that starts with the given
+    // prefix, or -1 if there is no such term.
+    public int lastIndexOf(String prefix) {
+        // throw exception if prefix string is null
+        if (prefix == null) throw new java.lang.NullPointerException();
+        
+        int lo = 0;
+        int hi = terms.length - 1;
+        int index = -1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int cmp = terms[mid].compareToPrefix(prefix);
+            if      (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            // keep searching to the right for a later match
+            else { index = mid; lo = mid + 1; }
+        }
+        return index;
     }
     
     // unit testing(required)
     public static void main(String[] args) {
-        // read in the terms from a file
+        // read in the terms from a file, parsing it on all processors
         String filename = args[0];
-        In in = new In(filename);
-        int N = in.readInt();
-        Term[] terms = new Term[N];
-        for (int i = 0; i < N; i++) {
-            // read the next weight
-            long weight = in.readLong();           
-            // scan past the tab
-            in.readChar();                         
-            // read the next query
-            String query = in.readLine();          
-            // construct the term
-            terms[i] = new Term(query, weight);    
-        }
+        Term[] terms = TermLoader.load(filename);
         
         // read in queries from standard input and print out the top k matching terms
         int k = Integer.parseInt(args[1]);
         Autocomplete autocomplete = new Autocomplete(terms);
         while (StdIn.hasNextLine()) {
             String prefix = StdIn.readLine();
-            Term[] results = autocomplete.allMatches(prefix);
-            for (int i = 0; i < Math.min(k, results.length); i++)
+            Term[] results = autocomplete.topK(prefix, k);
+            for (int i = 0; i < results.length; i++)
                 StdOut.println(results[i]);
         }
     }
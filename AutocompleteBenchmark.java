@@ -0,0 +1,190 @@
+import java.util.Arrays;
+import java.util.List;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+import edu.princeton.cs.algs4.Stopwatch;
+
+public class AutocompleteBenchmark {
+    
+    // read in the terms from a file in the format used by Autocomplete
+    private static Term[] readTerms(String filename) {
+        return TermLoader.load(filename);
+    }
+    
+    // all one- and two-character prefixes over the lowercase letters,
+    // which are the prefixes with the most matches
+    private static String[] shortPrefixes() {
+        String[] prefixes = new String[26 + 26*26];
+        int n = 0;
+        for (char a = 'a'; a <= 'z'; a++) {
+            prefixes[n++] = "" + a;
+            for (char b = 'a'; b <= 'z'; b++)
+                prefixes[n++] = "" + a + b;
+        }
+        return prefixes;
+    }
+    
+    // compare allMatches() truncated to k against topK() on short prefixes
+    private static void benchmarkTopK(Autocomplete autocomplete, 
+                                      String[] prefixes, int k, int trials) {
+        // check that both return the same terms in the same order
+        for (String prefix : prefixes) {
+            Term[] all = autocomplete.allMatches(prefix);
+            Term[] top = autocomplete.topK(prefix, k);
+            for (int i = 0; i < top.length; i++)
+                if (all[i] != top[i]) throw new RuntimeException(
+                    "topK(\"" + prefix + "\") differs at " + i + ".");
+        }
+        
+        Stopwatch timer = new Stopwatch();
+        long checksum = 0;
+        for (int t = 0; t < trials; t++)
+            for (String prefix : prefixes)
+                checksum += Math.min(k, autocomplete.allMatches(prefix).length);
+        double allTime = timer.elapsedTime();
+        
+        timer = new Stopwatch();
+        for (int t = 0; t < trials; t++)
+            for (String prefix : prefixes)
+                checksum -= autocomplete.topK(prefix, k).length;
+        double topTime = timer.elapsedTime();
+        
+        if (checksum != 0) throw new RuntimeException("Result sizes differ.");
+        int queries = trials * prefixes.length;
+        StdOut.printf("allMatches: %8.3f us/query\n", 1e6 * allTime / queries);
+        StdOut.printf("topK:       %8.3f us/query\n", 1e6 * topTime / queries);
+    }
+    
+    // compare one topK() call per prefix against a single batch call
+    private static void benchmarkBatch(Autocomplete autocomplete,
+                                       String[] prefixes, int k, int trials) {
+        List<String> batch = Arrays.asList(prefixes);
+        List<Term[]> results = autocomplete.allMatches(batch, k);
+        for (int i = 0; i < prefixes.length; i++) {
+            Term[] top = autocomplete.topK(prefixes[i], k);
+            if (!Arrays.equals(top, results.get(i))) throw new RuntimeException(
+                "Batch result for \"" + prefixes[i] + "\" differs.");
+        }
+        
+        Stopwatch timer = new Stopwatch();
+        for (int t = 0; t < trials; t++)
+            for (String prefix : prefixes)
+                autocomplete.topK(prefix, k);
+        double singleTime = timer.elapsedTime();
+        
+        timer = new Stopwatch();
+        for (int t = 0; t < trials; t++)
+            autocomplete.allMatches(batch, k);
+        double batchTime = timer.elapsedTime();
+        
+        int queries = trials * prefixes.length;
+        StdOut.printf("single:     %8.3f us/query\n", 1e6 * singleTime / queries);
+        StdOut.printf("batch:      %8.3f us/query\n", 1e6 * batchTime / queries);
+    }
+    
+    // run topK() from 1, 2, 4, ... threads sharing one instance and
+    // report the total throughput
+    private static void benchmarkThreads(final Autocomplete autocomplete,
+                                         final String[] prefixes, final int k,
+                                         final int trials) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Thread[] workers = new Thread[threads];
+            for (int w = 0; w < threads; w++) {
+                final int offset = w;
+                workers[w] = new Thread(new Runnable() {
+                    public void run() {
+                        // start each thread at a different prefix
+                        for (int t = 0; t < trials; t++)
+                            for (int i = 0; i < prefixes.length; i++)
+                                autocomplete.topK(prefixes[(i + offset) % prefixes.length], k);
+                    }
+                });
+            }
+            
+            Stopwatch timer = new Stopwatch();
+            for (Thread worker : workers)
+                worker.start();
+            try {
+                for (Thread worker : workers)
+                    worker.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            double elapsed = timer.elapsedTime();
+            
+            long queries = (long) threads * trials * prefixes.length;
+            StdOut.printf("%2d threads: %10.0f queries/sec\n", threads, queries / elapsed);
+        }
+    }
+    
+    // compare exact and fuzzy prefix matching on the ternary search tree,
+    // using prefixes of real queries with one character replaced
+    private static void benchmarkFuzzy(Term[] terms, int k, int trials) {
+        TrieAutocomplete trie = new TrieAutocomplete(terms, k);
+        String[] prefixes = new String[1000];
+        for (int i = 0; i < prefixes.length; i++) {
+            String query = terms[StdRandom.uniform(terms.length)].query();
+            char[] prefix = query.substring(0, Math.min(query.length(), 6)).toCharArray();
+            prefix[StdRandom.uniform(prefix.length)] = (char) ('a' + StdRandom.uniform(26));
+            prefixes[i] = new String(prefix);
+        }
+        
+        // check that asking for no terms returns none, exact or fuzzy
+        for (String prefix : prefixes)
+            if (trie.topMatches(prefix, 0).length != 0
+                || trie.fuzzyMatches(prefix, 0, 1).length != 0) throw new RuntimeException(
+                "k = 0 returned terms for \"" + prefix + "\".");
+        
+        for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+            // warm up, then time
+            for (String prefix : prefixes)
+                trie.fuzzyMatches(prefix, k, maxEdits);
+            Stopwatch timer = new Stopwatch();
+            long found = 0;
+            for (int t = 0; t < trials; t++)
+                for (String prefix : prefixes)
+                    found += trie.fuzzyMatches(prefix, k, maxEdits).length;
+            double elapsed = timer.elapsedTime();
+            int queries = trials * prefixes.length;
+            StdOut.printf("%d edits:    %8.3f us/query, %5.2f terms/query\n",
+                          maxEdits, 1e6 * elapsed / queries, (double) found / queries);
+        }
+        
+        Stopwatch timer = new Stopwatch();
+        for (int t = 0; t < trials; t++)
+            for (String prefix : prefixes)
+                trie.topMatches(prefix, k);
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("exact:      %8.3f us/query\n",
+                      1e6 * elapsed / (trials * prefixes.length));
+    }
+    
+    // benchmarks the query paths of Autocomplete on a dictionary file
+    // usage: java AutocompleteBenchmark wiktionary.txt 10 20
+    public static void main(String[] args) {
+        Term[] terms = readTerms(args[0]);
+        int k = Integer.parseInt(args[1]);
+        int trials = Integer.parseInt(args[2]);
+        Autocomplete autocomplete = new Autocomplete(terms);
+        String[] prefixes = shortPrefixes();
+        
+        StdOut.println("top " + k + " of " + terms.length + " terms, " 
+                       + prefixes.length + " short prefixes");
+        benchmarkTopK(autocomplete, prefixes, k, trials);
+        
+        StdOut.println("with range-maximum weight index");
+        benchmarkTopK(new Autocomplete(terms, true), prefixes, k, trials);
+        
+        StdOut.println("batch of " + prefixes.length + " prefixes");
+        benchmarkBatch(autocomplete, prefixes, k, trials);
+        
+        StdOut.println("concurrent topK");
+        benchmarkThreads(autocomplete, prefixes, k, trials);
+        
+        StdOut.println("fuzzy prefix matching");
+        benchmarkFuzzy(terms, k, trials);
+    }
+}
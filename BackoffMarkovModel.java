@@ -0,0 +1,235 @@
+// A Markov model of every order from 0 up to a maximum K, built from a
+// single index over the text instead of one MarkovModel per order.
+//
+// The positions of the circular text are sorted by the K + 1 code points
+// that start at each position, so for any j <= K the positions whose
+// first j code points equal a given kgram form one contiguous range.
+// The size of that range is the frequency of the kgram, and the code
+// point j places after a uniformly chosen position in the range is a
+// sample of what follows the kgram. Memory is two ints per code point.
+public class BackoffMarkovModel {
+    // cutoff to insertion sort
+    private static final int CUTOFF = 15;
+    // code points of the text, followed by its first K + 1 again so the
+    // window at any position can be read without wrapping
+    private final int[] text;
+    // positions of the text, sorted by their K + 1 code point windows
+    private final int[] index;
+    // number of code points in the text
+    private final int n;
+    // maximum order
+    private final int maxOrder;
+
+    // creates a model of every order up to maxOrder for the specified text
+    public BackoffMarkovModel(String text, int maxOrder) {
+        int[] codePoints = text.codePoints().toArray();
+        n = codePoints.length;
+        if (maxOrder < 0 || maxOrder > n)
+            throw new RuntimeException("maxOrder must be between 0 and the text length.");
+        this.maxOrder = maxOrder;
+
+        this.text = new int[n + maxOrder + 1];
+        for (int i = 0; i < this.text.length; i++)
+            this.text[i] = n == 0 ? 0 : codePoints[i % n];
+
+        index = new int[n];
+        for (int i = 0; i < n; i++) index[i] = i;
+        sort(0, n - 1, 0);
+    }
+
+    // 3-way radix quicksort of index[lo..hi] by the windows,
+    // starting at the d-th code point
+    private void sort(int lo, int hi, int d) {
+        if (d > maxOrder) return;
+        if (hi <= lo + CUTOFF) {
+            insertion(lo, hi, d);
+            return;
+        }
+        // a random pivot keeps periodic text from degrading the partition
+        exch(lo, lo + StdRandom.uniform(hi - lo + 1));
+        int lt = lo, gt = hi;
+        int v = text[index[lo] + d];
+        int i = lo + 1;
+        while (i <= gt) {
+            int t = text[index[i] + d];
+            if      (t < v) exch(lt++, i++);
+            else if (t > v) exch(i, gt--);
+            else              i++;
+        }
+        // index[lo..lt-1] < v = index[lt..gt] < index[gt+1..hi]
+        sort(lo, lt - 1, d);
+        sort(lt, gt, d + 1);
+        sort(gt + 1, hi, d);
+    }
+
+    // sort from index[lo] to index[hi], starting at the d-th code point
+    private void insertion(int lo, int hi, int d) {
+        for (int i = lo; i <= hi; i++)
+            for (int j = i; j > lo && less(index[j], index[j - 1], d); j--)
+                exch(j, j - 1);
+    }
+
+    // is the window at position p less than the window at position q,
+    // starting at the d-th code point?
+    private boolean less(int p, int q, int d) {
+        for (int t = d; t <= maxOrder; t++) {
+            if (text[p + t] < text[q + t]) return true;
+            if (text[p + t] > text[q + t]) return false;
+        }
+        return false;
+    }
+
+    // exchange index[i] and index[j]
+    private void exch(int i, int j) {
+        int swap = index[i];
+        index[i] = index[j];
+        index[j] = swap;
+    }
+
+    // compares the window at position p to the code points of the kgram
+    private int compare(int p, int[] kgram) {
+        for (int t = 0; t < kgram.length; t++) {
+            if (text[p + t] < kgram[t]) return -1;
+            if (text[p + t] > kgram[t]) return 1;
+        }
+        return 0;
+    }
+
+    // first index whose window is not less than the kgram
+    private int lowerBound(int[] kgram) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (compare(index[mid], kgram) < 0) lo = mid + 1;
+            else                                hi = mid;
+        }
+        return lo;
+    }
+
+    // first index whose window is greater than the kgram
+    private int upperBound(int[] kgram) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (compare(index[mid], kgram) <= 0) lo = mid + 1;
+            else                                 hi = mid;
+        }
+        return lo;
+    }
+
+    // code points of the kgram, checking its order
+    private int[] codePoints(String kgram) {
+        int[] codePoints = kgram.codePoints().toArray();
+        if (codePoints.length > maxOrder)
+            throw new RuntimeException("kgram longer than the maximum order.");
+        return codePoints;
+    }
+
+    // returns the maximum order K of this Markov model
+    public int maxOrder() {
+        return maxOrder;
+    }
+
+    // returns the number of times the specified kgram, of any
+    // order up to K, appears in the circular text
+    public int freq(String kgram) {
+        int[] codePoints = codePoints(kgram);
+        return upperBound(codePoints) - lowerBound(codePoints);
+    }
+
+    // returns the number of times the character c follows the specified
+    // kgram in the text
+    public int freq(String kgram, char c) {
+        return freq(kgram, (int) c);
+    }
+
+    // returns the number of times the code point follows the specified
+    // kgram in the text
+    public int freq(String kgram, int codePoint) {
+        int[] codePoints = codePoints(kgram);
+        int[] extended = java.util.Arrays.copyOf(codePoints, codePoints.length + 1);
+        extended[codePoints.length] = codePoint;
+        return upperBound(extended) - lowerBound(extended);
+    }
+
+    // returns a random code point that follows the specified kgram in the
+    // text, chosen with weight proportional to the number of times that
+    // code point follows the specified kgram in the text
+    public int randomCodePoint(String kgram) {
+        int[] codePoints = codePoints(kgram);
+        int lo = lowerBound(codePoints);
+        int hi = upperBound(codePoints);
+        if (lo == hi) throw new RuntimeException("kgram not in text.");
+        // every occurrence is equally likely, so a uniform position
+        // in the range samples the next code point by its count
+        int p = index[lo + StdRandom.uniform(hi - lo)];
+        return text[p + codePoints.length];
+    }
+
+    // returns a random character that follows the specified kgram in the text,
+    // chosen with weight proportional to the number of times that character
+    // follows the specified kgram in the text
+    public char random(String kgram) {
+        int codePoint = randomCodePoint(kgram);
+        if (Character.isSupplementaryCodePoint(codePoint))
+            throw new RuntimeException("next code point is not a single char.");
+        return (char) codePoint;
+    }
+
+    // returns the order of the longest suffix of the context, up to K
+    // code points, that appears in the text
+    public int order(String context) {
+        int[] codePoints = context.codePoints().toArray();
+        int j = Math.min(maxOrder, codePoints.length);
+        // an empty suffix matches every position, so the loop ends
+        while (j > 0) {
+            int[] suffix = java.util.Arrays.copyOfRange(codePoints,
+                               codePoints.length - j, codePoints.length);
+            if (lowerBound(suffix) < upperBound(suffix)) break;
+            j--;
+        }
+        return j;
+    }
+
+    // returns a random code point to follow the context, using its longest
+    // suffix of up to K code points that appears in the text and backing
+    // off to shorter suffixes when longer ones were never seen
+    public int next(String context) {
+        if (n == 0) throw new RuntimeException("text is empty.");
+        int j = order(context);
+        int start = context.offsetByCodePoints(context.length(), -j);
+        return randomCodePoint(context.substring(start));
+    }
+
+    // unit tests this class
+    // usage: java BackoffMarkovModel 5 200 < input.txt
+    public static void main(String[] args) {
+        String text1 = "banana";
+        BackoffMarkovModel model1 = new BackoffMarkovModel(text1, 2);
+        StdOut.println("freq(\"an\", 'a')    = " + model1.freq("an", 'a'));
+        StdOut.println("freq(\"na\", 'b')    = " + model1.freq("na", 'b'));
+        StdOut.println("freq(\"a\", 'n')     = " + model1.freq("a", 'n'));
+        StdOut.println("freq(\"na\")         = " + model1.freq("na"));
+        StdOut.println("freq(\"\")           = " + model1.freq(""));
+        StdOut.println("order(\"xan\")       = " + model1.order("xan"));
+        StdOut.println("order(\"bn\")        = " + model1.order("bn"));
+        StdOut.println();
+
+        if (args.length < 2) return;
+        int maxOrder = Integer.parseInt(args[0]);
+        int length = Integer.parseInt(args[1]);
+        String text = StdIn.readAll();
+        BackoffMarkovModel model = new BackoffMarkovModel(text, maxOrder);
+
+        // start from the first K code points and back off when needed
+        StringBuilder generated = new StringBuilder(
+            text.substring(0, text.offsetByCodePoints(0, maxOrder)));
+        for (int i = maxOrder; i < length; i++) {
+            int start = generated.offsetByCodePoints(generated.length(), -maxOrder);
+            generated.appendCodePoint(model.next(generated.substring(start)));
+        }
+        StdOut.println(generated);
+    }
+}
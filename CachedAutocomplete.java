@@ -0,0 +1,202 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import edu.princeton.cs.algs4.StdOut;
+
+// A size-bounded LRU cache of topK() results in front of an Autocomplete.
+// A result with fewer than k terms holds every match of its prefix, so it
+// is cached as complete: it answers the same prefix for any k, and any
+// longer prefix by filtering its terms. Safe to share between threads:
+// the lock is held only to read and update the map, and misses are
+// computed outside it, so a slow miss does not hold up other readers.
+public class CachedAutocomplete {
+
+    // private instance variables
+    private static final int ALL = -1;      // k of a complete result
+    private final Autocomplete autocomplete;
+    private final Cache cache;
+    private final Key probe = new Key("", ALL);  // reused to look up shorter prefixes
+    private long hits;                      // answered from the cache
+    private long misses;                    // answered by autocomplete
+
+    // cache key: a prefix, given as the first length chars of text, and
+    // the number of terms asked for; keys in the map are never changed,
+    // but the probe is reset in place to look up each shorter prefix
+    private static class Key {
+        private String text;
+        private int length;
+        private int k;
+        private int hash;
+
+        private Key(String prefix, int k) {
+            set(prefix, prefix.length(), prefix.hashCode(), k);
+        }
+
+        // makes this the key of the first length chars of text, whose
+        // String.hashCode() is prefixHash
+        private void set(String text, int length, int prefixHash, int k) {
+            this.text = text;
+            this.length = length;
+            this.k = k;
+            this.hash = 31 * prefixHash + k;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key that = (Key) other;
+            return this.hash == that.hash && this.k == that.k
+                && this.length == that.length
+                && this.text.regionMatches(0, that.text, 0, length);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // access-ordered map that drops its least recently used entry
+    private static class Cache extends LinkedHashMap<Key, Term[]> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private long evictions;             // entries dropped by the LRU
+
+        private Cache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Key, Term[]> eldest) {
+            if (size() <= capacity) return false;
+            evictions++;
+            return true;
+        }
+    }
+
+    // creates a cache of at most capacity results in front of autocomplete
+    public CachedAutocomplete(Autocomplete autocomplete, int capacity) {
+        // throw exceptions for corner cases
+        if (autocomplete == null) throw new java.lang.NullPointerException();
+        if (capacity < 1) throw new java.lang.IllegalArgumentException();
+        this.autocomplete = autocomplete;
+        this.cache = new Cache(capacity);
+    }
+
+    // Returns the k heaviest terms that start with the given prefix,
+    // in descending order of weight, as Autocomplete.topK() does.
+    public Term[] topK(String prefix, int k) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+
+        // exact hit, or a complete result for the same prefix; cached
+        // arrays are never changed, so they can be copied outside the lock
+        Key exact = new Key(prefix, k);
+        Key complete = new Key(prefix, ALL);
+        Term[] cached;
+        synchronized (this) {
+            cached = cache.get(exact);
+            if (cached == null) cached = cache.get(complete);
+            if (cached != null) hits++;
+        }
+        if (cached != null) return copy(cached, k);
+
+        // find the longest shorter prefix with a complete result, probing
+        // every length under one lock with one reused key and hashing the
+        // prefix as it goes; only the longest is touched in the LRU order
+        Term[] shorter = null;
+        synchronized (this) {
+            int longest = -1;
+            int longestHash = 0;
+            int hash = 0;
+            for (int length = 0; length < prefix.length(); length++) {
+                probe.set(prefix, length, hash, ALL);
+                if (cache.containsKey(probe)) {
+                    longest = length;
+                    longestHash = hash;
+                }
+                hash = 31 * hash + prefix.charAt(length);
+            }
+            if (longest != -1) {
+                probe.set(prefix, longest, longestHash, ALL);
+                shorter = cache.get(probe);
+            }
+        }
+
+        // filter its terms down to the matches of this prefix
+        if (shorter != null) {
+            Term[] matches = new Term[shorter.length];
+            int n = 0;
+            for (Term term : shorter)
+                if (term.compareToPrefix(prefix) == 0) matches[n++] = term;
+            Term[] filtered = new Term[n];
+            System.arraycopy(matches, 0, filtered, 0, n);
+            synchronized (this) {
+                cache.put(complete, filtered);
+                hits++;
+            }
+            return copy(filtered, k);
+        }
+
+        // compute and remember the result; two threads missing on the
+        // same prefix may both compute it, and the later put wins
+        Term[] result = autocomplete.topK(prefix, k);
+        synchronized (this) {
+            misses++;
+            if (result.length < k) cache.put(complete, result);
+            else                   cache.put(exact, result);
+        }
+        return copy(result, k);
+    }
+
+    // the first k terms, copied so callers cannot change the cache
+    private static Term[] copy(Term[] terms, int k) {
+        Term[] copy = new Term[Math.min(k, terms.length)];
+        System.arraycopy(terms, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    // Returns the number of terms that start with the given prefix.
+    public int numberOfMatches(String prefix) {
+        return autocomplete.numberOfMatches(prefix);
+    }
+
+    // number of queries answered from the cache, including
+    // those filtered from a shorter prefix
+    public synchronized long hits() {
+        return hits;
+    }
+
+    // number of queries passed on to Autocomplete
+    public synchronized long misses() {
+        return misses;
+    }
+
+    // number of entries dropped to stay within capacity
+    public synchronized long evictions() {
+        return cache.evictions;
+    }
+
+    // number of cached results
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    // unit tests this class
+    public static void main(String[] args) {
+        Term[] terms = {
+            new Term("ab", 10), new Term("abc", 30), new Term("abd", 20),
+            new Term("b", 5), new Term("bc", 7)
+        };
+        CachedAutocomplete cached = new CachedAutocomplete(new Autocomplete(terms), 2);
+
+        // "ab" has three matches, fewer than k, so it is complete
+        for (Term term : cached.topK("ab", 5))
+            StdOut.println(term);
+        // answered by filtering the complete result for "ab"
+        for (Term term : cached.topK("abc", 5))
+            StdOut.println(term);
+        // a third prefix evicts the least recently used entry
+        cached.topK("b", 1);
+        StdOut.println("hits = " + cached.hits() + ", misses = " + cached.misses()
+                       + ", evictions = " + cached.evictions());
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import edu.princeton.cs.algs4.StdOut;
+
+// Writes the binary files of MarkovModel.save() and
+// MappedAutocomplete.write() through one reusable direct buffer: the
+// writer fills the buffer, flushes it to the channel whenever the next
+// value would not fit, and flushes once more at the end.
+public class ChannelWriter {
+
+    // not instantiable
+    private ChannelWriter() { }
+
+    // writes out everything in the buffer and clears it for refilling;
+    // a channel may write fewer bytes than asked, so keep writing
+    public static void flush(FileChannel channel, ByteBuffer out)
+        throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+    }
+
+    // unit tests this class
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("channel", ".bin");
+        file.deleteOnExit();
+
+        // write more ints than the buffer holds, flushing when it is full
+        int n = 10000;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 10);
+            for (int i = 0; i < n; i++) {
+                if (out.remaining() < 4) flush(channel, out);
+                out.putInt(i);
+            }
+            flush(channel, out);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.capacity() != 4 * n) throw new RuntimeException(
+                "Wrote " + in.capacity() + " bytes, not " + 4 * n + ".");
+            for (int i = 0; i < n; i++)
+                if (in.getInt(4 * i) != i) throw new RuntimeException(
+                    "Int " + i + " reads back as " + in.getInt(4 * i) + ".");
+        }
+        StdOut.println("wrote and read back " + n + " ints");
+    }
+}
@@ -1,36 +1,111 @@
+import java.util.concurrent.locks.LockSupport;
+
 public class GuitarHero {
+      // default number of samples rendered and handed to the playback
+      // thread at a time
+      private static final int BLOCK = 256;
+
+      // plays the keyboard on 37 strings from 110 Hz, or on the 88 strings
+      // of a piano from 27.5 Hz with the keyboard over the same notes
+      // on the given number of threads, in blocks of the given size
+      // usage: java GuitarHero [37 | 88] [maxVoices] [threads] [blockSize]
       public static void main(String[] args) {
           // create keyboard
           String keyboard = "q2we4r5ty7u8i9op-[=zxdcfvgbnjmk,.;/' "; 
-          int length = keyboard.length();
+          int length = args.length > 0 ? Integer.parseInt(args[0]) : keyboard.length();
+          if (length != 37 && length != 88)
+              throw new RuntimeException("Number of strings must be 37 or 88.");
+          // string of the first key, which is 110 Hz either way
+          int first = length == 88 ? 24 : 0;
          
           // create new GuitarString object to simulate guitar
           // string being plucked 
           GuitarString[] string = new GuitarString[length];
           for (int i = 0; i < length; i++) 
               string[i] = 
-              new GuitarString(440 * Math.pow(2, ((double) (i - 24) / 12)));
+              new GuitarString(440 * Math.pow(2, ((double) (i - first - 24) / 12)));
+
+          // only the strings that are still sounding are simulated
+          int maxVoices = args.length > 1 ? Integer.parseInt(args[1]) : length;
+          VoicePool voices = new VoicePool(string, maxVoices, VoicePool.SILENT);
+          int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+          final int blockSize = args.length > 3 ? Integer.parseInt(args[3]) : BLOCK;
+          MixingPipeline pipeline = new MixingPipeline(voices, threads, blockSize);
          
-          // recognize next character/note to be played
+          // a playback thread drains the samples to standard audio, so a
+          // slow audio write never stalls keyboard polling or synthesis;
+          // the buffer holds two blocks, one playing and one rendered.
+          // A thread that finds it empty or full sleeps for an eighth of
+          // a block rather than spinning a core
+          final SpscRingBuffer audio = new SpscRingBuffer(2 * blockSize);
+          final long wait = 1000000000L * blockSize / StdAudio.SAMPLE_RATE / 8;
+          Thread playback = new Thread(new Runnable() {
+              public void run() {
+                  double[] block = new double[blockSize];
+                  while (true) {
+                      int n = audio.poll(block, 0, blockSize);
+                      if (n == 0) LockSupport.parkNanos(wait);
+                      for (int i = 0; i < n; i++)
+                          StdAudio.play(block[i]);
+                  }
+              }
+          }, "GuitarHero-playback");
+          playback.setDaemon(true);
+          playback.start();
+
+          // a thread reads the keyboard and queues time-stamped plucks,
+          // and on exit it prints how long the plucks took to reach
+          // the audio, up to StdAudio's own buffers
+          final KeyboardInput input = new KeyboardInput(keyboard, first);
+          input.start();
+          Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+              public void run() {
+                  input.report();
+              }
+          }));
+
+          // each block plays the plucks queued while the one before it was
+          // rendered, each starting at the sample matching when it was typed
+          double[] block = new double[blockSize];
+          long[] times = new long[16];
+          int[] offsets = new int[16];
+          long from = System.nanoTime();
           while (true) {
-              if (StdDraw.hasNextKeyTyped()) {
-                  char key = StdDraw.nextKeyTyped();
-                  for (int i = 0; i < length; i++) {
-                      if (i == keyboard.indexOf(key)) string[i].pluck(); 
+              long to = System.nanoTime();
+              int plucks = 0;
+              int off = 0;
+              KeyboardInput.Pluck pluck;
+              while ((pluck = input.poll(to)) != null) {
+                  int at = KeyboardInput.offset(pluck.time(), from, to, blockSize);
+                  
+                  // superpositions the samples of the sounding strings up to the pluck
+                  if (at > off) pipeline.render(block, off, at - off);
+                  off = Math.max(off, at);
+                  voices.pluck(pluck.string());
+                  if (plucks == times.length) {
+                      times = java.util.Arrays.copyOf(times, 2 * plucks);
+                      offsets = java.util.Arrays.copyOf(offsets, 2 * plucks);
                   }
+                  times[plucks] = pluck.time();
+                  offsets[plucks++] = off;
               }
-              
-              // superpositions all samples
-              double sample = 0.0;
-              for (int i = 0; i < length; i++) {
-                  sample = sample + string[i].sample();
+              pipeline.render(block, off, blockSize - off);
+              from = to;
+
+              // hand the block to the playback thread, waiting
+              // while it still has a full buffer to play
+              int offered = 0;
+              while (offered < blockSize) {
+                  int n = audio.offer(block, offered, blockSize - offered);
+                  if (n == 0) LockSupport.parkNanos(wait);
+                  offered += n;
               }
-              // play the (super)sample on standard audio
-              StdAudio.play(sample);
-  
-              // advance the simulation of each guitar string by one step
-              for (int i = 0; i < length; i++) {
-                  string[i].tic();
+
+              // each pluck leaves the queue once the samples ahead of it play
+              long now = System.nanoTime();
+              for (int p = 0; p < plucks; p++) {
+                  int ahead = Math.max(0, audio.size() - blockSize + offsets[p]);
+                  input.record(now - times[p] + 1000000000L * ahead / StdAudio.SAMPLE_RATE);
               }
           }
        }
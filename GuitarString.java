@@ -1,46 +1,102 @@
 public class GuitarString {
+    // energy kept by each step of the simulation
+    private static final double DECAY = 0.996;
     private int N;
-    private RingBuffer buffer;
+    // delay line of the simulation; the samples in the order they will be
+    // played are d[p], d[p+1], ..., d[N-1], d[0], ..., d[p-1]
+    private double[] d;
+    private int p;
     
     // creates a guitar string of the specified frequency,
     // using sampling rate of 44,100
     public GuitarString(double frequency) {
         N = (int) Math.ceil(44100 / frequency);
-        buffer = new RingBuffer(N);
-        for (int i = 0; i < N; i++) 
-            buffer.enqueue(0.0);
+        d = new double[N];
     }
 
     // creates a guitar string whose size and initial values are given by
     // the specified array
     public GuitarString(double[] init) {
         N = init.length;
-        buffer = new RingBuffer(N);
-        for (int i = 0; i < N; i++) {
-            buffer.enqueue(init[i]);
-        }    
+        d = init.clone();
     }
 
     // plucks the guitar string (by replacing the buffer with white noise)
      public void pluck() {      
+        pluck(1.0);
+    }
+
+    // plucks the guitar string with white noise scaled by velocity,
+    // where 1.0 is as hard as pluck()
+    public void pluck(double velocity) {
         for (int i = 0; i < N; i++) {
-            double val = StdRandom.uniform(-0.5, 0.5);
-            buffer.dequeue();
-            buffer.enqueue(val);
+            double val = velocity * StdRandom.uniform(-0.5, 0.5);
+            d[i] = val;
         }
+        p = 0;
     }
 
     // advances the Karplus-String simulation one time step
     public void tic() {
-        double val1 = buffer.dequeue();
-        double val2 = buffer.peek();
-        double val = 0.996 * (val1 + val2) / 2.0;
-        buffer.enqueue(val);
+        // the played sample leaves the front and its replacement takes
+        // its slot at the back
+        int q = p + 1 == N ? 0 : p + 1;
+        d[p] = DECAY * (d[p] + d[q]) / 2.0;
+        p = q;
     }
 
     // returns the current sample
     public double sample() {
-        return buffer.peek();
+        return d[p];
+    }
+
+    // silences the guitar string
+    public void mute() {
+        java.util.Arrays.fill(d, 0.0);
+    }
+
+    // returns the mean square of the next N samples, one period of the
+    // string, as a measure of how loud it still is
+    public double energy() {
+        double sum = 0.0;
+        for (int i = 0; i < N; i++)
+            sum += d[i] * d[i];
+        return sum / N;
+    }
+
+    // adds the next frames samples to out[off..off+frames-1] and advances
+    // the simulation past them; the same as frames calls of sample() and
+    // tic(), but the delay line is walked in runs that do not wrap, so
+    // the inner loop is branch-free and the JIT can vectorize it
+    public void render(double[] out, int off, int frames) {
+        if (frames < 0 || off < 0 || off > out.length - frames)
+            throw new IndexOutOfBoundsException();
+        int end = off + frames;
+        while (off < end) {
+            // d[N-1] is updated from d[0], so runs stop before it
+            int run = Math.min(end - off, N - 1 - p);
+            for (int j = 0; j < run; j++) {
+                out[off + j] += d[p + j];
+                d[p + j] = DECAY * (d[p + j] + d[p + j + 1]) / 2.0;
+            }
+            off += run;
+            p += run;
+            if (off < end) {
+                out[off++] += d[p];
+                tic();
+            }
+        }
+    }
+
+    // as render(), but scales the sample added to out[off+j] by
+    // gain + j*step, so a string can be faded out without a click
+    public void render(double[] out, int off, int frames, double gain, double step) {
+        if (frames < 0 || off < 0 || off > out.length - frames)
+            throw new IndexOutOfBoundsException();
+        for (int j = 0; j < frames; j++) {
+            out[off + j] += (gain + j * step) * d[p];
+            tic();
+        }
     }
 
     // unit tests this class
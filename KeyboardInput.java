@@ -0,0 +1,156 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Reads key presses on its own thread, so the audio thread never polls
+// the keyboard. Each key maps to a string through a table indexed by
+// the char, and each press goes onto a lock-free queue as a pluck
+// stamped with System.nanoTime(). The renderer takes the plucks at
+// block boundaries and starts each one at the sample of its block that
+// matches its stamp, so timing within a block is kept at the cost of
+// one block of fixed delay.
+//
+// The renderer reports when each pluck's first sample would leave the
+// playback queue through record(), and report() prints a histogram of
+// those key-to-queue latencies. They leave out the buffers inside
+// StdAudio and the audio line, which StdAudio does not expose and which
+// add a roughly constant delay on top before the pluck is heard.
+public class KeyboardInput {
+    // how long the input thread sleeps between polls, in milliseconds
+    private static final int POLL_INTERVAL = 1;
+
+    private final int[] strings;            // string of each char, or -1
+    private final ConcurrentLinkedQueue<Pluck> plucks =
+        new ConcurrentLinkedQueue<Pluck>();
+    private final long[] histogram = new long[64];  // latencies by power of two ns
+    private long count;                     // latencies recorded
+    private long sum;                       // their total, in ns
+
+    // a key press: the string to pluck and when the key was read
+    public static class Pluck {
+        private final int string;
+        private final long time;
+
+        private Pluck(int string, long time) {
+            this.string = string;
+            this.time = time;
+        }
+
+        // returns the index of the string to pluck
+        public int string() {
+            return string;
+        }
+
+        // returns the System.nanoTime() at which the key was read
+        public long time() {
+            return time;
+        }
+    }
+
+    // maps the i-th char of keyboard to string first + i
+    public KeyboardInput(String keyboard, int first) {
+        int size = 0;
+        for (int i = 0; i < keyboard.length(); i++)
+            size = Math.max(size, keyboard.charAt(i) + 1);
+        strings = new int[size];
+        java.util.Arrays.fill(strings, -1);
+        for (int i = 0; i < keyboard.length(); i++)
+            strings[keyboard.charAt(i)] = first + i;
+    }
+
+    // returns the string of the key, or -1 if it plays nothing
+    public int indexOf(char key) {
+        if (key >= strings.length) return -1;
+        return strings[key];
+    }
+
+    // queues a pluck for the key, stamped with the current time;
+    // keys that play nothing are dropped
+    public void press(char key) {
+        int string = indexOf(key);
+        if (string != -1) plucks.add(new Pluck(string, System.nanoTime()));
+    }
+
+    // starts a daemon thread that moves typed keys from StdDraw to the queue
+    public void start() {
+        Thread input = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        while (StdDraw.hasNextKeyTyped())
+                            press(StdDraw.nextKeyTyped());
+                        Thread.sleep(POLL_INTERVAL);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "KeyboardInput");
+        input.setDaemon(true);
+        input.start();
+    }
+
+    // removes and returns the oldest pluck stamped before the given
+    // time, or returns null if there is none
+    public Pluck poll(long before) {
+        Pluck pluck = plucks.peek();
+        if (pluck == null || pluck.time - before >= 0) return null;
+        return plucks.poll();
+    }
+
+    // sample of a block of frames samples at which a pluck stamped at time
+    // starts, when the block plays the plucks stamped in [from, to)
+    public static int offset(long time, long from, long to, int frames) {
+        if (to <= from) return 0;
+        long offset = (time - from) * frames / (to - from);
+        return (int) Math.max(0, Math.min(frames - 1, offset));
+    }
+
+    // records the key-to-queue latency of one pluck, from its stamp to
+    // when its first sample is due to leave the playback queue, in
+    // nanoseconds
+    public synchronized void record(long latency) {
+        latency = Math.max(1, latency);
+        histogram[63 - Long.numberOfLeadingZeros(latency)]++;
+        count++;
+        sum += latency;
+    }
+
+    // prints a histogram of the latencies recorded so far
+    public synchronized void report() {
+        if (count == 0) {
+            StdOut.println("no key-to-queue latencies recorded");
+            return;
+        }
+        StdOut.printf("key-to-queue latency of %d plucks, mean %.2f ms\n",
+                      count, sum / 1e6 / count);
+        long cumulative = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] == 0) continue;
+            cumulative += histogram[b];
+            StdOut.printf("< %8.2f ms %8d %6.2f%%\n", (2L << b) / 1e6, histogram[b],
+                          100.0 * cumulative / count);
+        }
+    }
+
+    // unit tests this class
+    public static void main(String[] args) throws InterruptedException {
+        KeyboardInput input = new KeyboardInput("q2we4r5ty7u8i9op-[=zxdcfvgbnjmk,.;/' ", 0);
+        StdOut.println("indexOf('q') = " + input.indexOf('q'));
+        StdOut.println("indexOf(' ') = " + input.indexOf(' '));
+        StdOut.println("indexOf('A') = " + input.indexOf('A'));
+
+        // three presses spread over a block's worth of time
+        long from = System.nanoTime();
+        input.press('q');
+        Thread.sleep(2);
+        input.press('A');
+        input.press('w');
+        Thread.sleep(2);
+        input.press('e');
+        long to = System.nanoTime();
+        Pluck pluck;
+        while ((pluck = input.poll(to)) != null)
+            StdOut.println("string " + pluck.string() + " at sample "
+                           + offset(pluck.time(), from, to, 256));
+    }
+}
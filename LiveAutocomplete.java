@@ -0,0 +1,292 @@
+import java.util.Arrays;
+import edu.princeton.cs.algs4.StdOut;
+
+// An Autocomplete whose weights can be updated and whose dictionary can
+// grow while it is being queried. Readers work on an immutable snapshot
+// made of a sorted base (indexed by an Autocomplete) and a small sorted
+// delta of newer terms. Writers publish a new snapshot with a copied
+// delta; once the delta grows past the merge threshold, a background
+// thread merges it into a new base in linear time. Readers never block
+// and never see a partially applied update.
+public class LiveAutocomplete {
+
+    // private instance variables
+    private final int mergeThreshold;       // delta size that triggers a merge
+    private final boolean indexWeights;     // build a RangeMaxIndex per base
+    private volatile Snapshot snapshot;     // current state, replaced on write
+    private boolean merging;                // is a background merge running?
+    private volatile Throwable mergeFailure; // why the last merge failed, or null
+
+    // immutable view of the dictionary
+    private static class Snapshot {
+        private final Term[] base;          // sorted, one term per query
+        private final Autocomplete index;   // query index over base
+        private final Term[] delta;         // sorted, overrides base by query
+
+        private Snapshot(Term[] base, Autocomplete index, Term[] delta) {
+            this.base = base;
+            this.index = index;
+            this.delta = delta;
+        }
+    }
+
+    // creates a live index from the given terms, merging
+    // the delta once it holds mergeThreshold terms
+    public LiveAutocomplete(Term[] terms, int mergeThreshold, boolean indexWeights) {
+        // throw exceptions for corner cases
+        if (terms == null) throw new java.lang.NullPointerException();
+        if (mergeThreshold < 1) throw new java.lang.IllegalArgumentException();
+        this.mergeThreshold = mergeThreshold;
+        this.indexWeights = indexWeights;
+
+        // sort and keep the heaviest term for each query
+        Term[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n > 0 && sorted[n - 1].compareTo(sorted[i]) == 0) {
+                if (sorted[i].weight() > sorted[n - 1].weight())
+                    sorted[n - 1] = sorted[i];
+            }
+            else sorted[n++] = sorted[i];
+        }
+        Term[] base = Arrays.copyOf(sorted, n);
+        snapshot = new Snapshot(base, new Autocomplete(base, indexWeights),
+                                new Term[0]);
+    }
+
+    // creates a live index from the given terms with a default merge threshold
+    public LiveAutocomplete(Term[] terms) {
+        this(terms, 1024, false);
+    }
+
+    // Changes the weight of an existing query. Throws an exception
+    // if the query is not in the dictionary.
+    public void updateWeight(String query, long weight) {
+        // throw exception if query is null
+        if (query == null) throw new java.lang.NullPointerException();
+        Term term = new Term(query, weight);
+        synchronized (this) {
+            Snapshot s = snapshot;
+            if (find(s.delta, term) < 0 && find(s.base, term) < 0)
+                throw new java.lang.IllegalArgumentException(
+                    "\"" + query + "\" is not in the dictionary.");
+            write(s, term);
+        }
+    }
+
+    // Adds the term to the dictionary, replacing the weight
+    // of its query if the query is already present.
+    public void insert(Term term) {
+        // throw exception if term is null
+        if (term == null) throw new java.lang.NullPointerException();
+        synchronized (this) {
+            write(snapshot, term);
+        }
+    }
+
+    // publish a snapshot with the term in a copy of the delta;
+    // must be called while holding the lock
+    private void write(Snapshot s, Term term) {
+        int i = find(s.delta, term);
+        Term[] delta;
+        if (i >= 0) {
+            delta = s.delta.clone();
+            delta[i] = term;
+        }
+        else {
+            // insert at the insertion point
+            i = -(i + 1);
+            delta = new Term[s.delta.length + 1];
+            System.arraycopy(s.delta, 0, delta, 0, i);
+            delta[i] = term;
+            System.arraycopy(s.delta, i, delta, i + 1, s.delta.length - i);
+        }
+        snapshot = new Snapshot(s.base, s.index, delta);
+
+        // fold the delta into the base without holding up the writer
+        if (delta.length >= mergeThreshold && !merging) {
+            merging = true;
+            Thread merger = new Thread(new Runnable() {
+                public void run() {
+                    merge();
+                }
+            }, "LiveAutocomplete-merge");
+            merger.setDaemon(true);
+            merger.start();
+        }
+    }
+
+    // merge the current delta into a new base, then keep only the
+    // delta entries that were written while the merge was running;
+    // if the merge fails, it is recorded in mergeFailure, rethrown to the
+    // merge thread's uncaught exception handler, and a later write tries again
+    private void merge() {
+        try {
+            Snapshot old = snapshot;
+            Term[] base = mergeSorted(old.base, old.delta);
+            Autocomplete index = new Autocomplete(base, indexWeights);
+            synchronized (this) {
+                Term[] current = snapshot.delta;
+                Term[] pending = new Term[current.length];
+                int n = 0;
+                int j = 0;
+                for (int i = 0; i < current.length; i++) {
+                    // the old delta is sorted too, so walk both together
+                    while (j < old.delta.length && old.delta[j].compareTo(current[i]) < 0)
+                        j++;
+                    boolean merged = j < old.delta.length && old.delta[j] == current[i];
+                    if (!merged) pending[n++] = current[i];
+                }
+                snapshot = new Snapshot(base, index, Arrays.copyOf(pending, n));
+            }
+            mergeFailure = null;
+        }
+        catch (Throwable e) {
+            mergeFailure = e;
+            throw e;
+        }
+        finally {
+            synchronized (this) {
+                merging = false;
+            }
+        }
+    }
+
+    // linear merge of two sorted arrays, taking the delta term
+    // when both hold the same query
+    private static Term[] mergeSorted(Term[] base, Term[] delta) {
+        Term[] merged = new Term[base.length + delta.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < base.length || j < delta.length) {
+            if      (i == base.length)                  merged[n++] = delta[j++];
+            else if (j == delta.length)                 merged[n++] = base[i++];
+            else {
+                int cmp = base[i].compareTo(delta[j]);
+                if      (cmp < 0)  merged[n++] = base[i++];
+                else if (cmp > 0)  merged[n++] = delta[j++];
+                else             { merged[n++] = delta[j++]; i++; }
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    // index of the term's query in the sorted array, or
+    // -(insertion point) - 1 if it is not there
+    private static int find(Term[] terms, Term term) {
+        return Arrays.binarySearch(terms, term);
+    }
+
+    // first index of the sorted array whose query is not less than the prefix
+    private static int lowerBound(Term[] terms, String prefix) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (terms[mid].compareToPrefix(prefix) < 0) lo = mid + 1;
+            else                                        hi = mid;
+        }
+        return lo;
+    }
+
+    // first index of the sorted array whose query is greater than the prefix
+    private static int upperBound(Term[] terms, String prefix) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (terms[mid].compareToPrefix(prefix) <= 0) lo = mid + 1;
+            else                                         hi = mid;
+        }
+        return lo;
+    }
+
+    // descending order of weight, ties broken by lexicographic order
+    private static int rank(Term a, Term b) {
+        if      (a.weight() > b.weight()) return -1;
+        else if (a.weight() < b.weight()) return 1;
+        else                              return a.compareTo(b);
+    }
+
+    // Returns the k heaviest terms that start with the given prefix,
+    // in descending order of weight, as of the latest completed write.
+    public Term[] topK(String prefix, int k) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+
+        // read the snapshot once so the whole query sees the same state
+        Snapshot s = snapshot;
+        int lo = lowerBound(s.delta, prefix);
+        int hi = upperBound(s.delta, prefix);
+
+        // every delta match can hide at most one base term
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) k + (hi - lo));
+        Term[] fromBase = s.index.topK(prefix, wanted);
+        Term[] candidates = new Term[fromBase.length + hi - lo];
+        int n = 0;
+        for (Term term : fromBase)
+            if (find(s.delta, term) < 0) candidates[n++] = term;
+        for (int i = lo; i < hi; i++)
+            candidates[n++] = s.delta[i];
+
+        Arrays.sort(candidates, 0, n, new java.util.Comparator<Term>() {
+            public int compare(Term a, Term b) {
+                return rank(a, b);
+            }
+        });
+        return Arrays.copyOf(candidates, Math.min(k, n));
+    }
+
+    // Returns all terms that start with the given prefix,
+    // in descending order of weight.
+    public Term[] allMatches(String prefix) {
+        return topK(prefix, Integer.MAX_VALUE);
+    }
+
+    // Returns the number of terms that start with the given prefix.
+    public int numberOfMatches(String prefix) {
+        // throw exception if prefix string is null
+        if (prefix == null) throw new java.lang.NullPointerException();
+
+        Snapshot s = snapshot;
+        int count = s.index.numberOfMatches(prefix);
+        // count only the delta terms that are not replacing a base term
+        int hi = upperBound(s.delta, prefix);
+        for (int i = lowerBound(s.delta, prefix); i < hi; i++)
+            if (find(s.base, s.delta[i]) < 0) count++;
+        return count;
+    }
+
+    // Returns the exception that made the last background merge fail,
+    // or null if it succeeded. Writes keep working after a failure, but
+    // the delta they copy keeps growing until a merge succeeds.
+    public Throwable mergeFailure() {
+        return mergeFailure;
+    }
+
+    // unit tests this class
+    public static void main(String[] args) throws InterruptedException {
+        Term[] terms = {
+            new Term("apple", 50), new Term("apricot", 30),
+            new Term("banana", 40), new Term("avocado", 20)
+        };
+        LiveAutocomplete live = new LiveAutocomplete(terms, 2, false);
+        for (Term term : live.topK("a", 3))
+            StdOut.println(term);
+        StdOut.println();
+
+        // raise one weight and add a new query
+        live.updateWeight("avocado", 60);
+        live.insert(new Term("almond", 45));
+        for (Term term : live.topK("a", 3))
+            StdOut.println(term);
+        StdOut.println("numberOfMatches(\"a\") = " + live.numberOfMatches("a"));
+
+        // give the background merge time to finish; the results do not change
+        Thread.sleep(100);
+        StdOut.println("numberOfMatches(\"a\") = " + live.numberOfMatches("a"));
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
+
+// Autocomplete served straight from a memory-mapped binary dictionary.
+//
+// File format (big-endian):
+//   int     magic number
+//   int     N, the number of terms
+//   long    total number of query bytes
+//   long[N] weights, in query order
+//   int[N+1] offsets of each query in the byte section
+//   byte[]  UTF-8 queries, sorted by unsigned byte order
+//
+// Unsigned UTF-8 byte order is code point order. It matches the String
+// order used by Autocomplete except between a supplementary character
+// and a character from U+E000 to U+FFFF, which sort the other way round.
+// So the matches of a prefix are the same, but terms of equal weight
+// containing such characters may come back in a different order.
+// Queries and prefixes with an unpaired surrogate have no UTF-8 encoding
+// and are rejected.
+public class MappedAutocomplete {
+
+    // private instance variables
+    private static final int MAGIC = 0x41434431;   // "ACD1"
+    private static final int HEADER = 16;          // bytes before the weights
+    private final MappedByteBuffer buffer;
+    private final int n;                           // number of terms
+    private final int offsetsStart;                // position of offsets[0]
+    private final int bytesStart;                  // position of query bytes
+    // the weights column, as read by Autocomplete's bounded heap
+    private final Autocomplete.Weights weights = new Autocomplete.Weights() {
+        public long weight(int i) {
+            return MappedAutocomplete.this.weight(i);
+        }
+    };
+
+    // a query encoded as UTF-8, used only while writing a dictionary
+    private static class Entry implements Comparable<Entry> {
+        private final byte[] query;
+        private final long weight;
+
+        private Entry(Term term) {
+            query = encode(term.query());
+            weight = term.weight();
+        }
+
+        // unsigned byte order, which for UTF-8 is code point order
+        public int compareTo(Entry that) {
+            int n = Math.min(this.query.length, that.query.length);
+            for (int i = 0; i < n; i++) {
+                int a = this.query[i] & 0xff;
+                int b = that.query[i] & 0xff;
+                if (a != b) return a - b;
+            }
+            return this.query.length - that.query.length;
+        }
+    }
+
+    // the UTF-8 encoding of s, which must not hold an unpaired surrogate;
+    // getBytes() would silently encode one as '?'
+    private static byte[] encode(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) i++;
+            else if (Character.isSurrogate(c)) throw new java.lang.IllegalArgumentException(
+                "Unpaired surrogate at index " + i + " of \"" + s + "\".");
+        }
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // writes the given terms to a binary dictionary file
+    public static void write(Term[] terms, String filename) {
+        // throw exceptions for corner cases
+        if (terms == null || filename == null) throw new
+            java.lang.NullPointerException("Argument cannot be null.");
+
+        // encode and sort the queries
+        Entry[] entries = new Entry[terms.length];
+        long totalBytes = 0;
+        for (int i = 0; i < terms.length; i++) {
+            entries[i] = new Entry(terms[i]);
+            totalBytes += entries[i].query.length;
+        }
+        Arrays.sort(entries);
+        if (HEADER + 12L * terms.length + 4 + totalBytes > Integer.MAX_VALUE)
+            throw new java.lang.IllegalArgumentException(
+                "Dictionary does not fit in a single mapping.");
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+            out.putInt(MAGIC);
+            out.putInt(entries.length);
+            out.putLong(totalBytes);
+
+            // weights column
+            for (Entry entry : entries) {
+                if (out.remaining() < 8) ChannelWriter.flush(channel, out);
+                out.putLong(entry.weight);
+            }
+
+            // offsets column, with one extra offset for the end
+            int offset = 0;
+            for (Entry entry : entries) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(offset);
+                offset += entry.query.length;
+            }
+            if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+            out.putInt(offset);
+
+            // query bytes
+            for (Entry entry : entries) {
+                int written = 0;
+                while (written < entry.query.length) {
+                    if (!out.hasRemaining()) ChannelWriter.flush(channel, out);
+                    int length = Math.min(out.remaining(),
+                                          entry.query.length - written);
+                    out.put(entry.query, written, length);
+                    written += length;
+                }
+            }
+            ChannelWriter.flush(channel, out);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + filename, e);
+        }
+    }
+
+    // maps the given binary dictionary file for reading
+    public MappedAutocomplete(String filename) {
+        // throw exception if filename is null
+        if (filename == null) throw new java.lang.NullPointerException();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(
+                    "Dictionary does not fit in a single mapping.");
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Could not open " + filename, e);
+        }
+
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) throw new
+            IllegalArgumentException(filename + " is not a dictionary file.");
+        n = buffer.getInt(4);
+
+        // check that the header count, the columns and the query bytes all
+        // fit in the file, so a truncated or corrupt file fails here rather
+        // than as an IndexOutOfBoundsException in the middle of a query
+        long totalBytes = buffer.getLong(8);
+        if (n < 0 || totalBytes < 0
+            || HEADER + 12L * n + 4 + totalBytes > buffer.capacity())
+            throw new IllegalArgumentException(filename + " is truncated or corrupt: "
+                + n + " terms and " + totalBytes + " query bytes do not fit in "
+                + buffer.capacity() + " bytes.");
+        offsetsStart = HEADER + 8 * n;
+        bytesStart = offsetsStart + 4 * (n + 1);
+        if (buffer.getInt(offsetsStart) != 0
+            || buffer.getInt(offsetsStart + 4 * n) != totalBytes)
+            throw new IllegalArgumentException(filename + " is truncated or corrupt: "
+                + "the offsets do not span the " + totalBytes + " query bytes.");
+    }
+
+    // returns the number of terms in the dictionary
+    public int size() {
+        return n;
+    }
+
+    // weight of the i-th term in sorted order
+    private long weight(int i) {
+        return buffer.getLong(HEADER + 8 * i);
+    }
+
+    // position of the first query byte of the i-th term
+    private int start(int i) {
+        return bytesStart + buffer.getInt(offsetsStart + 4 * i);
+    }
+
+    // the i-th term, decoded from the mapped bytes
+    private Term term(int i) {
+        int start = start(i);
+        byte[] query = new byte[start(i + 1) - start];
+        for (int j = 0; j < query.length; j++)
+            query[j] = buffer.get(start + j);
+        return new Term(new String(query, StandardCharsets.UTF_8), weight(i));
+    }
+
+    // compares the first prefix.length bytes of the i-th query
+    // to the prefix, as Term.compareToPrefix() does for characters
+    private int compareToPrefix(int i, byte[] prefix) {
+        int start = start(i);
+        int length = Math.min(start(i + 1) - start, prefix.length);
+        for (int j = 0; j < length; j++) {
+            int a = buffer.get(start + j) & 0xff;
+            int b = prefix[j] & 0xff;
+            if (a != b) return a - b;
+        }
+        return length - prefix.length;
+    }
+
+    // index of the first (or last) query that starts with prefix, or -1
+    private int indexOf(byte[] prefix, boolean first) {
+        int lo = 0;
+        int hi = n - 1;
+        int index = -1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int cmp = compareToPrefix(mid, prefix);
+            if      (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else {
+                index = mid;
+                if (first) hi = mid - 1;
+                else       lo = mid + 1;
+            }
+        }
+        return index;
+    }
+
+    // Returns the number of terms that start with the given prefix.
+    public int numberOfMatches(String prefix) {
+        // throw exception if prefix string is null
+        if (prefix == null) throw new java.lang.NullPointerException();
+
+        byte[] bytes = encode(prefix);
+        int firstTerm = indexOf(bytes, true);
+        if (firstTerm == -1) return 0;
+        return indexOf(bytes, false) - firstTerm + 1;
+    }
+
+    // Returns all terms that start with the given prefix,
+    // in descending order of weight.
+    public Term[] allMatches(String prefix) {
+        return topK(prefix, Integer.MAX_VALUE);
+    }
+
+    // Returns the k heaviest terms that start with the given prefix,
+    // in descending order of weight. Only the returned terms are
+    // decoded onto the heap.
+    public Term[] topK(String prefix, int k) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+
+        // find the range of matching terms
+        byte[] bytes = encode(prefix);
+        int firstTerm = indexOf(bytes, true);
+        if (firstTerm == -1 || k == 0) return new Term[0];
+        int lastTerm = indexOf(bytes, false);
+
+        // select with Autocomplete's bounded heap, then decode the winners
+        int[] indices = Autocomplete.top(weights, firstTerm, lastTerm, k);
+        Term[] top = new Term[indices.length];
+        for (int i = 0; i < indices.length; i++)
+            top[i] = term(indices[i]);
+        return top;
+    }
+
+    // unit testing
+    // usage: java MappedAutocomplete build wiktionary.txt wiktionary.bin
+    //        java MappedAutocomplete wiktionary.bin 5
+    public static void main(String[] args) {
+        if (args[0].equals("build")) {
+            // read in the terms from a text file
+            Term[] terms = TermLoader.load(args[1]);
+            write(terms, args[2]);
+            StdOut.println("wrote " + terms.length + " terms to " + args[2]);
+            return;
+        }
+
+        // read in queries from standard input and print out the top k matching terms
+        MappedAutocomplete autocomplete = new MappedAutocomplete(args[0]);
+        int k = Integer.parseInt(args[1]);
+        while (StdIn.hasNextLine()) {
+            String prefix = StdIn.readLine();
+            for (Term term : autocomplete.topK(prefix, k))
+                StdOut.println(term);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// A trained MarkovModel served straight from a memory-mapped file written
+// by MarkovModel.save(). Nothing is copied onto the heap, so opening a
+// model takes constant time and processes mapping the same file share
+// its pages.
+//
+// File format (big-endian):
+//   int      magic number
+//   int      k, the order
+//   int      number of distinct code points in the text
+//   int      n, the number of distinct kgrams
+//   int      P, the number of distinct (kgram, code point) transitions
+//   int[n*k] code points of each kgram, kgrams in code point order
+//   int[n]   number of times each kgram appears
+//   int[n+1] first transition of each kgram
+//   int[P]   code point of each transition, ascending within a kgram
+//   int[P]   count of each transition
+//   double[P] alias probability of each transition
+//   int[P]   alias of each transition
+public class MappedMarkovModel {
+    // format constants, shared with MarkovModel.save()
+    static final int MAGIC = 0x4d4b5631;    // "MKV1"
+    static final int HEADER = 20;           // bytes before the kgrams
+
+    // private instance variables
+    private final MappedByteBuffer buffer;
+    private final int k;                    // order
+    private final int symbols;              // number of distinct code points
+    private final int n;                    // number of distinct kgrams
+    private final int totalsStart;          // position of the kgram totals
+    private final int firstStart;           // position of the row starts
+    private final int nextStart;            // position of the transition code points
+    private final int countStart;           // position of the transition counts
+    private final int probStart;            // position of the alias probabilities
+    private final int aliasStart;           // position of the aliases
+
+    // maps the given model file for reading
+    public MappedMarkovModel(String filename) {
+        // throw exception if filename is null
+        if (filename == null) throw new java.lang.NullPointerException();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new RuntimeException("model does not fit in a single mapping.");
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not open " + filename, e);
+        }
+
+        if (buffer.getInt(0) != MAGIC)
+            throw new RuntimeException(filename + " is not a Markov model file.");
+        k = buffer.getInt(4);
+        symbols = buffer.getInt(8);
+        n = buffer.getInt(12);
+        int pairs = buffer.getInt(16);
+        totalsStart = HEADER + 4 * n * k;
+        firstStart = totalsStart + 4 * n;
+        nextStart = firstStart + 4 * (n + 1);
+        countStart = nextStart + 4 * pairs;
+        probStart = countStart + 4 * pairs;
+        aliasStart = probStart + 8 * pairs;
+    }
+
+    // compares kgram i of the file to the code points of the given kgram,
+    // walking the string in place
+    private int compare(int i, String kgram) {
+        int position = HEADER + 4 * i * k;
+        for (int t = 0, j = 0; t < k; t++) {
+            int codePoint = buffer.getInt(position + 4 * t);
+            int c = kgram.codePointAt(j);
+            if (codePoint != c) return codePoint < c ? -1 : 1;
+            j += Character.charCount(c);
+        }
+        return 0;
+    }
+
+    // index of the kgram in the file, or -1 if it is not in the text
+    private int id(String kgram) {
+        if (kgram.codePointCount(0, kgram.length()) != k)
+            throw new RuntimeException("kgram not of order k.");
+
+        // binary search the sorted kgrams
+        int lo = 0;
+        int hi = n - 1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int cmp = compare(mid, kgram);
+            if      (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // first transition of kgram i
+    private int first(int i) {
+        return buffer.getInt(firstStart + 4 * i);
+    }
+
+    // returns the order k of this Markov model
+    public int order() {
+        return k;
+    }
+
+    // returns the number of distinct code points in the text
+    public int alphabetSize() {
+        return symbols;
+    }
+
+    // returns the number of times the specified kgram appears in the text
+    public int freq(String kgram) {
+        int id = id(kgram);
+        if (id == -1) return 0;
+        return buffer.getInt(totalsStart + 4 * id);
+    }
+
+    // returns the number of times the character c follows the specified
+    // kgram in the text
+    public int freq(String kgram, char c) {
+        return freq(kgram, (int) c);
+    }
+
+    // returns the number of times the code point follows the specified
+    // kgram in the text
+    public int freq(String kgram, int codePoint) {
+        int id = id(kgram);
+        if (id == -1) return 0;
+        // binary search the row of the kgram
+        int lo = first(id);
+        int hi = first(id + 1) - 1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int next = buffer.getInt(nextStart + 4 * mid);
+            if      (next < codePoint) lo = mid + 1;
+            else if (next > codePoint) hi = mid - 1;
+            else return buffer.getInt(countStart + 4 * mid);
+        }
+        return 0;
+    }
+
+    // returns a random code point that follows the specified kgram in the
+    // text, chosen with weight proportional to the number of times that
+    // code point follows the specified kgram in the text
+    public int randomCodePoint(String kgram) {
+        int id = id(kgram);
+        if (id == -1)
+            throw new RuntimeException("kgram not in text.");
+        // pick a slot of the row uniformly, then keep it or take its alias
+        int lo = first(id);
+        int j = lo + StdRandom.uniform(first(id + 1) - lo);
+        if (StdRandom.uniform() >= buffer.getDouble(probStart + 8 * j))
+            j = buffer.getInt(aliasStart + 4 * j);
+        return buffer.getInt(nextStart + 4 * j);
+    }
+
+    // returns a random character that follows the specified kgram in the text,
+    // chosen with weight proportional to the number of times that character
+    // follows the specified kgram in the text; use randomCodePoint() for
+    // text with characters outside the Basic Multilingual Plane
+    public char random(String kgram) {
+        int codePoint = randomCodePoint(kgram);
+        if (Character.isSupplementaryCodePoint(codePoint))
+            throw new RuntimeException("next code point is not a single char.");
+        return (char) codePoint;
+    }
+
+    // unit testing
+    // usage: java MappedMarkovModel build 5 model.bin < text.txt
+    //        java MappedMarkovModel model.bin < kgrams.txt
+    public static void main(String[] args) {
+        if (args[0].equals("build")) {
+            int k = Integer.parseInt(args[1]);
+            Stopwatch timer = new Stopwatch();
+            MarkovModel model = new MarkovModel(StdIn.readAll(), k);
+            model.save(args[2]);
+            StdOut.printf("trained and saved order %d in %.3f s\n", k, timer.elapsedTime());
+            return;
+        }
+
+        Stopwatch timer = new Stopwatch();
+        MappedMarkovModel model = new MappedMarkovModel(args[0]);
+        StdOut.printf("mapped order %d in %.3f s\n", model.order(), timer.elapsedTime());
+
+        // print the frequency of each kgram and a code point that follows it
+        while (StdIn.hasNextLine()) {
+            String kgram = StdIn.readLine();
+            if (kgram.codePointCount(0, kgram.length()) != model.order()) continue;
+            int freq = model.freq(kgram);
+            if (freq == 0) StdOut.println("\"" + kgram + "\" not in text");
+            else StdOut.println("\"" + kgram + "\" " + freq + " -> '"
+                                + new String(Character.toChars(model.randomCodePoint(kgram))) + "'");
+        }
+    }
+}
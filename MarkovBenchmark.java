@@ -0,0 +1,56 @@
+public class MarkovBenchmark {
+    
+    // generate characters by calling random() once per character,
+    // the way a text generator drives the model
+    private static void benchmarkRandom(MarkovModel model, String text,
+                                        int length) {
+        int k = model.order();
+        String kgram = text.substring(0, k);
+        Stopwatch timer = new Stopwatch();
+        long checksum = 0;
+        for (int i = 0; i < length; i++) {
+            char c = model.random(kgram);
+            checksum += c;
+            kgram = kgram.substring(1) + c;
+        }
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("random():   %12.0f chars/sec (checksum %d)\n",
+                      length / elapsed, checksum);
+    }
+    
+    // generate the same number of characters with generate(), which
+    // walks kgram ids instead of building a kgram string per character
+    private static void benchmarkGenerate(MarkovModel model, String text,
+                                          int length) {
+        String kgram = text.substring(0, model.order());
+        Stopwatch timer = new Stopwatch();
+        char[] generated = model.generate(kgram, length,
+                                          new java.util.SplittableRandom(length));
+        double elapsed = timer.elapsedTime();
+        long checksum = 0;
+        for (char c : generated)
+            checksum += c;
+        StdOut.printf("generate(): %12.0f chars/sec (checksum %d)\n",
+                      length / elapsed, checksum);
+    }
+    
+    // benchmarks MarkovModel on the text read from standard input
+    // usage: java MarkovBenchmark 7 10000000 [threads] < corpus.txt
+    public static void main(String[] args) {
+        int k = Integer.parseInt(args[0]);
+        int length = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        String text = StdIn.readAll();
+        
+        Stopwatch timer = new Stopwatch();
+        MarkovModel model = new MarkovModel(text, k, threads);
+        StdOut.printf("trained order %d on %d chars with %d threads in %.3f s\n",
+                      k, text.length(), threads, timer.elapsedTime());
+        
+        // warm up, then time
+        benchmarkRandom(model, text, length / 10);
+        benchmarkRandom(model, text, length);
+        benchmarkGenerate(model, text, length / 10);
+        benchmarkGenerate(model, text, length);
+    }
+}
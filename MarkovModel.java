@@ -1,108 +1,868 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 public class MarkovModel {
     // define instance variables
-    // define length of ASCII alphabet
-    private static final int ASCII = 128;
-    // create symbol table
-    private ST<String, ST<Character, Integer>> st = 
-        new ST<String, ST<Character, Integer>>();
+    // multiplier of the polynomial kgram hash
+    private static final int BASE = 31;
+    // largest number of distinct symbols, so a symbol id fits in a char
+    private static final int MAX_SYMBOLS = 1 << 16;
+    // symbol dictionary, kgram symbol table and transition counts
+    private final Counts counts;
+    // transitions of each kgram id in compressed rows: the symbols
+    // that follow kgram id are next[first[id]..first[id+1]-1], with
+    // matching counts, sorted by symbol id
+    private int[] first;
+    private char[] next;
+    private int[] count;
+    // number of times each kgram id appears in the text
+    private int[] total;
+    // alias table over each row: slot j of a row keeps its own symbol
+    // with probability prob[j] and otherwise gives it to alias[j]
+    private double[] prob;
+    private int[] alias;
+    // kgram id reached by following each transition, so generation can
+    // walk the model without building kgram strings
+    private int[] nextState;
     // create variable k (order)
-    private int k;
-    
-    // creates a Markov model of order k for the specified text
-    public MarkovModel(String text, int k) {   
+    private final int k;
+
+    // Counts kgrams and the symbols that follow them using open
+    // addressing on primitive arrays. Every code point seen in the text
+    // gets a dense symbol id, so memory follows the observed alphabet.
+    // Each distinct kgram is stored once, as k symbol ids in a shared
+    // char[] pool, and identified by a dense kgram id; each
+    // (kgram id, symbol id) pair is packed into a long key.
+    private static class Counts {
+        private final int k;
+        private int symbols;        // number of distinct code points
+        private int[] codePoints;   // code point of each symbol id
+        private int[] symbolTable;  // symbol id + 1 per slot, 0 if empty
+        private int n;              // number of distinct kgrams
+        private char[] kgrams;      // kgram id occupies [id*k, id*k + k)
+        private int[] hashes;       // hash of each kgram id
+        private int[] table;        // kgram id + 1 per slot, 0 if empty
+        private long[] pairKeys;    // (id << 16 | symbol) + 1 per slot, 0 if empty
+        private int[] pairCounts;   // count of each pair slot
+        private int pairs;          // number of distinct pairs
+
+        private Counts(int k) {
+            this.k = k;
+            codePoints = new int[16];
+            symbolTable = new int[32];
+            kgrams = new char[16 * k];
+            hashes = new int[16];
+            table = new int[32];
+            pairKeys = new long[64];
+            pairCounts = new int[64];
+        }
+
+        // spread the bits of a hash over the table index
+        private static int mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+
+        // slot of the code point in the symbol table,
+        // or the empty slot where it would go
+        private int symbolSlot(int codePoint) {
+            int mask = symbolTable.length - 1;
+            int i = mix(codePoint) & mask;
+            while (symbolTable[i] != 0 && codePoints[symbolTable[i] - 1] != codePoint)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        // symbol id of the code point, or -1 if it was never seen
+        private int findSymbol(int codePoint) {
+            return symbolTable[symbolSlot(codePoint)] - 1;
+        }
+
+        // symbol id of the code point, adding it if it is new
+        private int symbol(int codePoint) {
+            int i = symbolSlot(codePoint);
+            if (symbolTable[i] != 0) return symbolTable[i] - 1;
+            if (symbols == MAX_SYMBOLS)
+                throw new RuntimeException("more than " + MAX_SYMBOLS + " distinct symbols.");
+            if (symbols == codePoints.length)
+                codePoints = Arrays.copyOf(codePoints, 2 * symbols);
+            codePoints[symbols] = codePoint;
+            symbolTable[i] = symbols + 1;
+            symbols++;
+
+            // double the symbol table
+            if (2 * symbols > symbolTable.length) {
+                symbolTable = new int[2 * symbolTable.length];
+                int mask = symbolTable.length - 1;
+                for (int s = 0; s < symbols; s++) {
+                    int j = mix(codePoints[s]) & mask;
+                    while (symbolTable[j] != 0) j = (j + 1) & mask;
+                    symbolTable[j] = s + 1;
+                }
+            }
+            return symbols - 1;
+        }
+
+        // does kgram id equal the k symbols of pool starting at offset?
+        private boolean matches(int id, char[] pool, int offset) {
+            for (int t = 0; t < k; t++)
+                if (kgrams[id * k + t] != pool[offset + t]) return false;
+            return true;
+        }
+
+        // slot of the kgram at pool[offset..] with the given hash,
+        // or the empty slot where it would go
+        private int slot(int hash, char[] pool, int offset) {
+            int mask = table.length - 1;
+            int i = mix(hash) & mask;
+            while (table[i] != 0) {
+                int id = table[i] - 1;
+                if (hashes[id] == hash && matches(id, pool, offset)) break;
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        // id of the kgram at pool[offset..] with the given hash, or -1
+        private int find(int hash, char[] pool, int offset) {
+            return table[slot(hash, pool, offset)] - 1;
+        }
+
+        // does kgram id hold the first k code points of text?
+        private boolean matches(int id, String text) {
+            int i = 0;
+            for (int t = 0; t < k; t++) {
+                int codePoint = text.codePointAt(i);
+                if (codePoints[kgrams[id * k + t]] != codePoint) return false;
+                i += Character.charCount(codePoint);
+            }
+            return true;
+        }
+
+        // id of the kgram made of the first k code points of text, whose
+        // symbol ids have the given hash, or -1; compares in place
+        private int find(int hash, String text) {
+            int mask = table.length - 1;
+            int i = mix(hash) & mask;
+            while (table[i] != 0) {
+                int id = table[i] - 1;
+                if (hashes[id] == hash && matches(id, text)) return id;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        // id of the kgram at pool[offset..], adding it if it is new
+        private int intern(int hash, char[] pool, int offset) {
+            int i = slot(hash, pool, offset);
+            if (table[i] != 0) return table[i] - 1;
+
+            // copy the new kgram into the pool
+            if (n == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * n);
+                kgrams = Arrays.copyOf(kgrams, 2 * n * k);
+            }
+            System.arraycopy(pool, offset, kgrams, n * k, k);
+            hashes[n] = hash;
+            table[i] = n + 1;
+            n++;
+            if (2 * n > table.length) rehash();
+            return n - 1;
+        }
+
+        // double the kgram table
+        private void rehash() {
+            table = new int[2 * table.length];
+            int mask = table.length - 1;
+            for (int id = 0; id < n; id++) {
+                int i = mix(hashes[id]) & mask;
+                while (table[i] != 0) i = (i + 1) & mask;
+                table[i] = id + 1;
+            }
+        }
+
+        // add times to the count of symbol s following kgram id
+        private void add(int id, char s, int times) {
+            long key = ((long) id << 16 | s) + 1;
+            int mask = pairKeys.length - 1;
+            int i = mix(key) & mask;
+            while (pairKeys[i] != 0 && pairKeys[i] != key) i = (i + 1) & mask;
+            if (pairKeys[i] == 0) {
+                pairKeys[i] = key;
+                pairs++;
+            }
+            pairCounts[i] += times;
+            if (2 * pairs > pairKeys.length) rehashPairs();
+        }
+
+        // double the pair table
+        private void rehashPairs() {
+            long[] oldKeys = pairKeys;
+            int[] oldCounts = pairCounts;
+            pairKeys = new long[2 * oldKeys.length];
+            pairCounts = new int[2 * oldKeys.length];
+            int mask = pairKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0) continue;
+                int i = mix(oldKeys[j]) & mask;
+                while (pairKeys[i] != 0) i = (i + 1) & mask;
+                pairKeys[i] = oldKeys[j];
+                pairCounts[i] = oldCounts[j];
+            }
+        }
+
+        // a deep copy of these counts
+        private Counts copy() {
+            Counts copy = new Counts(k);
+            copy.symbols = symbols;
+            copy.codePoints = codePoints.clone();
+            copy.symbolTable = symbolTable.clone();
+            copy.n = n;
+            copy.kgrams = kgrams.clone();
+            copy.hashes = hashes.clone();
+            copy.table = table.clone();
+            copy.pairKeys = pairKeys.clone();
+            copy.pairCounts = pairCounts.clone();
+            copy.pairs = pairs;
+            return copy;
+        }
+
+        // add all the counts of that to these counts
+        private void merge(Counts that) {
+            // map the symbol ids of that onto symbol ids here
+            char[] symbolIds = new char[that.symbols];
+            for (int s = 0; s < that.symbols; s++)
+                symbolIds[s] = (char) symbol(that.codePoints[s]);
+
+            // then its kgrams, which hash differently once translated
+            char[] kgram = new char[k];
+            int[] ids = new int[that.n];
+            for (int id = 0; id < that.n; id++) {
+                for (int t = 0; t < k; t++)
+                    kgram[t] = symbolIds[that.kgrams[id * k + t]];
+                ids[id] = intern(hash(kgram, 0, k), kgram, 0);
+            }
+            for (int i = 0; i < that.pairKeys.length; i++) {
+                long key = that.pairKeys[i];
+                if (key == 0) continue;
+                int id = (int) ((key - 1) >>> 16);
+                add(ids[id], symbolIds[(char) (key - 1)], that.pairCounts[i]);
+            }
+        }
+    }
+
+    // Counts the transitions of the kgrams starting in chars
+    // [lo, hi) of the circular text, splitting the range in two and
+    // merging the counts of the halves while it is larger than grain.
+    // Each range reads the k code points past its end, so no transition
+    // is lost at a split.
+    private static class CountTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+        private final String text;
+        private final int k, lo, hi, grain;
+
+        private CountTask(String text, int k, int lo, int hi, int grain) {
+            this.text = text;
+            this.k = k;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        protected Counts compute() {
+            if (hi - lo <= grain) return count(text, k, lo, hi);
+            int mid = lo + (hi - lo) / 2;
+            CountTask left = new CountTask(text, k, lo, mid, grain);
+            left.fork();
+            Counts right = new CountTask(text, k, mid, hi, grain).compute();
+            Counts counts = left.join();
+            // merge the smaller table into the larger one
+            if (counts.pairs < right.pairs) {
+                right.merge(counts);
+                return right;
+            }
+            counts.merge(right);
+            return counts;
+        }
+    }
+
+    // Builds a Markov model from text that arrives in pieces, such as a
+    // corpus too large to hold in memory as one String. Keeps only the
+    // counts, the first k code points (for the circular wrap-around) and
+    // the last k symbols, so memory is bounded by the size of the
+    // model rather than the size of the text. finish() can be called
+    // more than once, with more text added in between.
+    public static class Builder {
+        private final int k;
+        private final Counts counts;
+        private final int[] head;       // first k code points of the text
+        private final char[] window;    // last k symbols, written twice
+        private int position;           // start of the last k in window
+        private long length;            // number of code points so far
+        private int hash;               // hash of the last k symbols
+        private final int power;        // BASE^(k-1)
+        private char high;              // pending high surrogate, or 0
+
+        // creates a builder for a model of order k
+        public Builder(int k) {
+            if (k < 0) throw new RuntimeException("k must not be negative.");
+            this.k = k;
+            counts = new Counts(k);
+            head = new int[k];
+            window = new char[2 * k];
+            int p = 1;
+            for (int t = 1; t < k; t++) p *= BASE;
+            power = p;
+        }
+
+        // copy of the builder state, so finish() can wrap around
+        // without disturbing further additions
+        private Builder(Builder that) {
+            k = that.k;
+            counts = that.counts.copy();
+            head = that.head;
+            window = that.window.clone();
+            position = that.position;
+            length = that.length;
+            hash = that.hash;
+            power = that.power;
+            high = that.high;
+        }
+
+        // count the transition into the code point, then slide
+        // its symbol into the window
+        private void addCodePoint(int codePoint) {
+            char s = (char) counts.symbol(codePoint);
+            if (length < k) {
+                head[(int) length] = codePoint;
+                hash = hash * BASE + s;
+            }
+            else {
+                int id = counts.intern(hash, window, position);
+                counts.add(id, s, 1);
+                if (k > 0) hash = (hash - window[position] * power) * BASE + s;
+            }
+            // the window holds each symbol at i and i + k, so the
+            // last k symbols are always window[position..position+k)
+            if (k > 0) {
+                int i = (int) (length % k);
+                window[i] = s;
+                window[i + k] = s;
+                position = (int) ((length + 1) % k);
+            }
+            length++;
+        }
+
+        // decode surrogate pairs, which may be split across additions,
+        // the same way String.codePointAt() does
+        private void add(char c) {
+            if (high != 0) {
+                char pending = high;
+                high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    addCodePoint(Character.toCodePoint(pending, c));
+                    return;
+                }
+                addCodePoint(pending);
+            }
+            if (Character.isHighSurrogate(c)) high = c;
+            else                              addCodePoint(c);
+        }
+
+        // adds the given text
+        public Builder addText(CharSequence text) {
+            for (int i = 0; i < text.length(); i++)
+                add(text.charAt(i));
+            return this;
+        }
+
+        // adds all the text the reader has left, a block at a time
+        public Builder add(Reader reader) {
+            char[] buffer = new char[8192];
+            try {
+                int read;
+                while ((read = reader.read(buffer)) != -1)
+                    for (int i = 0; i < read; i++)
+                        add(buffer[i]);
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Could not read the text.", e);
+            }
+            return this;
+        }
+
+        // adds all the UTF-8 text the stream has left
+        public Builder add(InputStream in) {
+            return add(new InputStreamReader(in,
+                StandardCharsets.UTF_8));
+        }
+
+        // adds all the UTF-8 text the channel has left
+        public Builder add(ReadableByteChannel channel) {
+            return add(Channels.newReader(channel,
+                StandardCharsets.UTF_8.newDecoder(), -1));
+        }
+
+        // counts of the text added so far, with the last k kgrams
+        // wrapped around to the first code points; wraps a copy, so
+        // more text can still be added
+        private Counts wrappedCounts() {
+            return new Builder(this).wrap();
+        }
+
+        // wraps the last k kgrams around to the first code points in
+        // place and returns the counts, without copying them; the
+        // builder must not be used afterwards
+        private Counts wrap() {
+            if (high != 0) {
+                addCodePoint(high);
+                high = 0;
+            }
+            if (length < k)
+                throw new RuntimeException("k must be between 0 and the text length.");
+            for (int t = 0; t < k; t++)
+                addCodePoint(head[t]);
+            return counts;
+        }
+
+        // returns the model of the text added so far, treating it as
+        // circular: the last k kgrams wrap around to the first code points
+        public MarkovModel finish() {
+            return new MarkovModel(k, wrappedCounts());
+        }
+    }
+
+    // creates a model from finished counts
+    private MarkovModel(int k, Counts counts) {
+        this.k = k;
+        this.counts = counts;
+        compile();
+    }
+
+    // creates a Markov model of order k for the specified text,
+    // where k and the model's symbols are Unicode code points
+    public MarkovModel(String text, int k) {
+        this(text, k, 1);
+    }
+
+    // creates a Markov model of order k for the specified text,
+    // counting transitions on the given number of threads; the
+    // counts are the same as with a single thread
+    public MarkovModel(String text, int k, int threads) {
         // initiate k order
         this.k = k;
-        
-        // add on kgram to text
-        String circText = text + text.substring(0, k);
-        
-        for (int i = 0; i < text.length(); i++) {
-            // set kgram
-            String kgram = circText.substring(i, i+k);  
-            
-            // if the symbol table has the kgram
-            if (st.contains(kgram)) {
-                // get inner symbol table (iST)
-                ST<Character, Integer> iST = st.get(kgram);
-                // get character after kgram
-                char currentChar = circText.charAt(i+k);
-                
-                // if iST has character, increment frequency
-                if (iST.contains(currentChar)) {
-                    int val = iST.get(currentChar) + 1;
-                    iST.put(currentChar, val);
+        if (k < 0 || k > text.codePointCount(0, text.length()))
+            throw new RuntimeException("k must be between 0 and the text length.");
+        if (threads < 1) throw new RuntimeException("threads must be positive.");
+
+        // the builder is thrown away, so its counts are wrapped in place
+        if (threads == 1) counts = new Builder(k).addText(text).wrap();
+        else {
+            // a few chunks per thread keeps the threads busy to the end
+            int grain = Math.max(1 << 16, text.length() / (4 * threads));
+            ForkJoinPool pool =
+                new ForkJoinPool(threads);
+            try {
+                counts = pool.invoke(new CountTask(text, k, 0, text.length(), grain));
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        compile();
+    }
+
+    // count the transitions of the kgrams whose first code point starts
+    // in chars [lo, hi) of the text, treating the text as circular
+    private static Counts count(String text, int k, int lo, int hi) {
+        Builder builder = new Builder(k);
+        int length = text.length();
+
+        // a surrogate pair split at lo belongs to the range before
+        int i = lo;
+        if (i > 0 && i < length && Character.isLowSurrogate(text.charAt(i))
+            && Character.isHighSurrogate(text.charAt(i - 1))) i++;
+        while (i < hi) {
+            int codePoint = text.codePointAt(i);
+            builder.addCodePoint(codePoint);
+            i += Character.charCount(codePoint);
+        }
+
+        // then the k code points after the range, wrapping around
+        for (int t = 0; t < k; t++) {
+            if (i >= length) i = 0;
+            int codePoint = text.codePointAt(i);
+            builder.addCodePoint(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return builder.counts;
+    }
+
+    // polynomial hash of the k symbols of pool starting at offset
+    private static int hash(char[] pool, int offset, int k) {
+        int h = 0;
+        for (int t = 0; t < k; t++) h = h * BASE + pool[offset + t];
+        return h;
+    }
+
+    // lay the pair counts out in compressed rows and drop the pair table
+    private void compile() {
+        int n = counts.n;
+        first = new int[n + 1];
+        total = new int[n];
+        long[] keys = counts.pairKeys;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) continue;
+            int id = (int) ((keys[i] - 1) >>> 16);
+            first[id + 1]++;
+        }
+        for (int id = 0; id < n; id++) first[id + 1] += first[id];
+
+        next = new char[counts.pairs];
+        count = new int[counts.pairs];
+        int[] fill = Arrays.copyOf(first, n);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) continue;
+            int id = (int) ((keys[i] - 1) >>> 16);
+            char s = (char) (keys[i] - 1);
+            // insertion sort into the row, which is short
+            int j = fill[id]++;
+            while (j > first[id] && next[j - 1] > s) {
+                next[j] = next[j - 1];
+                count[j] = count[j - 1];
+                j--;
+            }
+            next[j] = s;
+            count[j] = counts.pairCounts[i];
+            total[id] += counts.pairCounts[i];
+        }
+        counts.pairKeys = null;
+        counts.pairCounts = null;
+
+        // build the alias table of every row
+        prob = new double[next.length];
+        alias = new int[next.length];
+        int[] small = new int[next.length];
+        int[] large = new int[next.length];
+        for (int id = 0; id < n; id++)
+            buildAlias(first[id], first[id + 1], total[id], small, large);
+
+        // drop the first symbol of each kgram and append the next one;
+        // the text is circular, so the resulting kgram always exists
+        nextState = new int[next.length];
+        char[] kgram = new char[k];
+        for (int id = 0; id < n; id++) {
+            if (k > 0) System.arraycopy(counts.kgrams, id * k + 1, kgram, 0, k - 1);
+            for (int j = first[id]; j < first[id + 1]; j++) {
+                if (k > 0) kgram[k - 1] = next[j];
+                nextState[j] = counts.find(hash(kgram, 0, k), kgram, 0);
+            }
+        }
+    }
+
+    // Vose's alias method over row [lo, hi), which sums to sum
+    private void buildAlias(int lo, int hi, int sum, int[] small, int[] large) {
+        int size = hi - lo;
+        int smalls = 0;
+        int larges = 0;
+        // scale each count so that the average slot is exactly 1
+        for (int j = lo; j < hi; j++) {
+            prob[j] = (double) count[j] * size / sum;
+            if (prob[j] < 1.0) small[smalls++] = j;
+            else               large[larges++] = j;
+        }
+        // top up each small slot from a large one
+        while (smalls > 0 && larges > 0) {
+            int less = small[--smalls];
+            int more = large[--larges];
+            alias[less] = more;
+            prob[more] = prob[more] + prob[less] - 1.0;
+            if (prob[more] < 1.0) small[smalls++] = more;
+            else                  large[larges++] = more;
+        }
+        // whatever is left is full up to rounding error
+        while (larges > 0) {
+            int j = large[--larges];
+            prob[j] = 1.0;
+            alias[j] = j;
+        }
+        while (smalls > 0) {
+            int j = small[--smalls];
+            prob[j] = 1.0;
+            alias[j] = j;
+        }
+    }
+
+    // writes this model to a binary file that MappedMarkovModel serves
+    // without retraining; see MappedMarkovModel for the format
+    public void save(String filename) {
+        if (filename == null) throw new java.lang.NullPointerException();
+        final int n = counts.n;
+        final int[] codePoints = counts.codePoints;
+        final char[] kgrams = counts.kgrams;
+        int pairs = next.length;
+        long bytes = MappedMarkovModel.HEADER + 4L * n * k + 4L * (2 * n + 1) + 20L * pairs;
+        if (bytes > Integer.MAX_VALUE)
+            throw new RuntimeException("model does not fit in a single mapping.");
+
+        // kgram ids in code point order, so a mapped model can binary search
+        Integer[] order = new Integer[n];
+        for (int id = 0; id < n; id++) order[id] = id;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                for (int t = 0; t < k; t++) {
+                    int x = codePoints[kgrams[a * k + t]];
+                    int y = codePoints[kgrams[b * k + t]];
+                    if (x != y) return x < y ? -1 : 1;
                 }
-                
-                // if doesn't have character, add in
-                else iST.put(currentChar, 1);
+                return 0;
             }
-            
-            // if the symbol table doesn't have the kgram
-            else {
-                ST<Character, Integer> iST = new ST<Character, Integer>();
-                char currentChar = circText.charAt(i+k);
-                int val = 1;
-                iST.put(currentChar, val);
-                st.put(kgram, iST);               
+        });
+
+        // lay the rows out in that order, each sorted by code point,
+        // and remember where every transition moved for the aliases
+        int[] rowFirst = new int[n + 1];
+        int[] moved = new int[pairs];
+        long[] row = new long[Math.max(1, counts.symbols)];
+        for (int i = 0; i < n; i++) {
+            int id = order[i];
+            int size = first[id + 1] - first[id];
+            for (int j = 0; j < size; j++)
+                row[j] = (long) codePoints[next[first[id] + j]] << 32 | j;
+            Arrays.sort(row, 0, size);
+            for (int j = 0; j < size; j++)
+                moved[first[id] + (int) row[j]] = rowFirst[i] + j;
+            rowFirst[i + 1] = rowFirst[i] + size;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+            out.putInt(MappedMarkovModel.MAGIC);
+            out.putInt(k);
+            out.putInt(counts.symbols);
+            out.putInt(n);
+            out.putInt(pairs);
+
+            // kgrams, then their totals and the start of their rows
+            for (int i = 0; i < n; i++) {
+                for (int t = 0; t < k; t++) {
+                    if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                    out.putInt(codePoints[kgrams[order[i] * k + t]]);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(total[order[i]]);
+            }
+            for (int i = 0; i <= n; i++) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(rowFirst[i]);
+            }
+
+            // transition columns, each in the new order
+            int[] from = new int[pairs];
+            for (int j = 0; j < pairs; j++) from[moved[j]] = j;
+            for (int j = 0; j < pairs; j++) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(codePoints[next[from[j]]]);
+            }
+            for (int j = 0; j < pairs; j++) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(count[from[j]]);
             }
+            for (int j = 0; j < pairs; j++) {
+                if (out.remaining() < 8) ChannelWriter.flush(channel, out);
+                out.putDouble(prob[from[j]]);
+            }
+            for (int j = 0; j < pairs; j++) {
+                if (out.remaining() < 4) ChannelWriter.flush(channel, out);
+                out.putInt(moved[alias[from[j]]]);
+            }
+            ChannelWriter.flush(channel, out);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not write " + filename, e);
+        }
+    }
+
+    // id of the kgram, or -1 if it is not in the text
+    private int id(String kgram) {
+        if (kgram.codePointCount(0, kgram.length()) != k)
+            throw new RuntimeException("kgram not of order k.");
+        // hash the symbol ids as the code points are translated, then
+        // compare the candidates against the kgram in place
+        int h = 0;
+        int i = 0;
+        for (int t = 0; t < k; t++) {
+            int codePoint = kgram.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int s = counts.findSymbol(codePoint);
+            if (s == -1) return -1;
+            h = h * BASE + s;
         }
+        return counts.find(h, kgram);
     }
-                
-          
+
     // returns the order k of this Markov model
     public int order() {
        return k;
     }
 
+    // returns the number of distinct code points in the text
+    public int alphabetSize() {
+        return counts.symbols;
+    }
+
     // returns the number of times the specified kgram appears in the text
     public int freq(String kgram) {
-       int sum = 0;
-       if (kgram.length() != k) 
-           throw new RuntimeException("kgram not of order k.");     
-       else if (st.get(kgram) == null) return 0;
-       else {
-           ST<Character, Integer> iST = st.get(kgram);           
-           for (char c : iST) sum = sum + iST.get(c);
-           }
-       return sum;
+       int id = id(kgram);
+       if (id == -1) return 0;
+       return total[id];
     }
 
     // returns the number of times the character c follows the specified
     // kgram in the text
     public int freq(String kgram, char c) {
-        int repeat = 0;
-        if (kgram.length() != k) 
-            throw new RuntimeException("kgram not of order k.");   
-        else if (st.get(kgram) == null) return 0;
-        else {
-            ST<Character, Integer> iST = st.get(kgram);
-            if (iST.get(c) == null) return 0;
-            else repeat = iST.get(c);
-            return repeat;
+        return freq(kgram, (int) c);
+    }
+
+    // returns the number of times the code point follows the specified
+    // kgram in the text
+    public int freq(String kgram, int codePoint) {
+        int id = id(kgram);
+        if (id == -1) return 0;
+        int s = counts.findSymbol(codePoint);
+        if (s == -1) return 0;
+        // binary search the row of the kgram
+        int lo = first[id];
+        int hi = first[id + 1] - 1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            if      (next[mid] < s) lo = mid + 1;
+            else if (next[mid] > s) hi = mid - 1;
+            else return count[mid];
         }
+        return 0;
     }
-        
+
+    // returns a random code point that follows the specified kgram in the
+    // text, chosen with weight proportional to the number of times that
+    // code point follows the specified kgram in the text
+    public int randomCodePoint(String kgram) {
+        int id = id(kgram);
+        if (id == -1)
+            throw new RuntimeException("kgram not in text.");
+        // pick a slot of the row uniformly, then keep it or take its
+        // alias; no allocation and constant time
+        int j = first[id] + StdRandom.uniform(first[id + 1] - first[id]);
+        if (StdRandom.uniform() >= prob[j]) j = alias[j];
+        return counts.codePoints[next[j]];
+    }
+
     // returns a random character that follows the specified kgram in the text,
     // chosen with weight proportional to the number of times that character
-    // follows the specified kgram in the text
+    // follows the specified kgram in the text; use randomCodePoint() for
+    // text with characters outside the Basic Multilingual Plane
        public char random(String kgram) {
-           if (kgram.length() != k) 
-               throw new RuntimeException("kgram not of order k."); 
-           else if (!st.contains(kgram)) 
-               throw new RuntimeException("kgram not in text.");
-           else {
-            // create integer array with length of ASCII alphabet's length
-            int[] charCount = new int[ASCII];
-            // use enhanced for loop to put frequency of each ASCII character 
-            // in array for this kgram
-                ST<Character, Integer> iST = st.get(kgram);
-           for (char c : iST) {
-                    charCount[c] = iST.get(c);  
+           int codePoint = randomCodePoint(kgram);
+           if (Character.isSupplementaryCodePoint(codePoint))
+               throw new RuntimeException("next code point is not a single char.");
+           return (char) codePoint;
+        }
+
+    // id of the kgram a generator starts from
+    private int start(String kgram) {
+        int id = id(kgram);
+        if (id == -1)
+            throw new RuntimeException("kgram not in text.");
+        return id;
+    }
+
+    // sample a transition out of kgram id with the given source of randomness
+    private int step(int id, SplittableRandom random) {
+        int j = first[id] + random.nextInt(first[id + 1] - first[id]);
+        if (random.nextDouble() >= prob[j]) j = alias[j];
+        return j;
+    }
+
+    // appends length code points generated from the model to out, starting
+    // after the specified kgram, writing them through the given block of at
+    // least two chars; the generator walks kgram ids, so a caller that
+    // reuses its block generates without allocating
+    public void generate(String kgram, int length, Appendable out,
+                         SplittableRandom random, char[] block) {
+        if (length < 0) throw new RuntimeException("length must not be negative.");
+        if (block.length < 2) throw new RuntimeException("block must hold at least two chars.");
+        int id = start(kgram);
+        int filled = 0;
+        try {
+            for (int i = 0; i < length; i++) {
+                int j = step(id, random);
+                if (filled > block.length - 2) {
+                    out.append(CharBuffer.wrap(block, 0, filled));
+                    filled = 0;
                 }
-               char r = (char) StdRandom.discrete(charCount);
-               return r;
-           }
+                filled += Character.toChars(counts.codePoints[next[j]], block, filled);
+                id = nextState[j];
+            }
+            out.append(CharBuffer.wrap(block, 0, filled));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not write the text.", e);
+        }
+    }
+
+    // appends length code points generated from the model to out, starting
+    // after the specified kgram, through a new block of chars
+    public void generate(String kgram, int length, Appendable out,
+                         SplittableRandom random) {
+        generate(kgram, length, out, random, new char[8192]);
+    }
+
+    // appends length code points generated from the model to out
+    public void generate(String kgram, int length, Appendable out) {
+        generate(kgram, length, out, new SplittableRandom());
+    }
+
+    // returns length code points generated from the model, starting after
+    // the specified kgram; the same seed of random gives the same text
+    public char[] generate(String kgram, int length, SplittableRandom random) {
+        if (length < 0) throw new RuntimeException("length must not be negative.");
+        int id = start(kgram);
+        char[] text = new char[length];
+        int filled = 0;
+        for (int i = 0; i < length; i++) {
+            int j = step(id, random);
+            int codePoint = counts.codePoints[next[j]];
+            // grow only for a supplementary code point that does not fit;
+            // each code point left takes at most two chars
+            if (filled + Character.charCount(codePoint) > text.length)
+                text = Arrays.copyOf(text, filled + 2 * (length - i));
+            filled += Character.toChars(codePoint, text, filled);
+            id = nextState[j];
         }
+        if (filled == text.length) return text;
+        return Arrays.copyOf(text, filled);
+    }
 
     // unit tests this class
        public static void main(String[] args) {
@@ -114,11 +874,37 @@ public class MarkovModel {
            StdOut.println("freq(\"na\")         = " + model1.freq("na"));
            StdOut.println();
 
-           String text2 = "one fish two fish red fish blue fish"; 
+           String text2 = "one fish two fish red fish blue fish";
            MarkovModel model2 = new MarkovModel(text2, 4);
            StdOut.println("freq(\"ish \", 'r') = " + model2.freq("ish ", 'r'));
            StdOut.println("freq(\"ish \", 'x') = " + model2.freq("ish ", 'x'));
            StdOut.println("freq(\"ish \")      = " + model2.freq("ish "));
            StdOut.println("freq(\"tuna\")      = " + model2.freq("tuna"));
+           StdOut.println();
+
+           // the same counts as model1, from text added in pieces
+           MarkovModel model3 =
+               new MarkovModel.Builder(2).addText("ban").addText("ana").finish();
+           StdOut.println("freq(\"an\", 'a')    = " + model3.freq("an", 'a'));
+           StdOut.println("freq(\"na\", 'b')    = " + model3.freq("na", 'b'));
+           StdOut.println();
+
+           // the same seed generates the same text
+           char[] generated1 = model2.generate("one ", 20, new SplittableRandom(42));
+           char[] generated2 = model2.generate("one ", 20, new SplittableRandom(42));
+           StdOut.println("generate(\"one \", 20) = \"" + new String(generated1) + "\"");
+           StdOut.println("reproducible        = "
+                          + Arrays.equals(generated1, generated2));
+           StdOut.println();
+
+           // non-ASCII text, including a character outside the BMP
+           String smile = new String(Character.toChars(0x1F600));
+           String text4 = "caf\u00e9 " + smile + " caf\u00e9 " + smile + " ";
+           MarkovModel model4 = new MarkovModel(text4, 1);
+           StdOut.println("alphabetSize()      = " + model4.alphabetSize());
+           StdOut.println("freq(\"\u00e9\", ' ')     = " + model4.freq("\u00e9", ' '));
+           StdOut.println("freq(\" \", U+1F600) = " + model4.freq(" ", 0x1F600));
+           StdOut.println("freq(smile)         = " + model4.freq(smile));
+           StdOut.println("random(smile)       = '" + model4.random(smile) + "'");
        }
 }
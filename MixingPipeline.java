@@ -0,0 +1,177 @@
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// Renders the sounding strings of a VoicePool a block at a time on
+// several threads. The calling thread and workers - 1 helper threads
+// each render an interleaved part of the voices into their own partial
+// buffer; the calling thread then sums the partials into the output
+// block. A block that takes longer to render than it takes to play
+// counts as a deadline miss. A block may be rendered in pieces, for
+// example split where a note starts; every blockSize samples still
+// count as one block, timed from the start of its first piece.
+//
+// Plucks must happen on the calling thread between calls to render():
+// the helpers only touch the pool between the two barriers of a block.
+public class MixingPipeline {
+    private final VoicePool voices;
+    private final int workers;
+    private final int blockSize;
+    private final double[][] partials;      // one buffer per worker
+    private final CyclicBarrier start;      // a block is ready to render
+    private final CyclicBarrier done;       // every part of it is rendered
+    private final Thread[] helpers;
+    private volatile boolean closed;
+    private int frames;                     // samples in the current piece
+    private int filled;                     // samples of the current block so far
+    private long blockStart;                // when its first piece started
+    private long blocks;                    // blocks rendered
+    private long deadlineMisses;            // blocks rendered too slowly
+
+    // creates a pipeline rendering blocks of blockSize samples
+    // of the given voices on the given number of threads
+    public MixingPipeline(VoicePool voices, int workers, int blockSize) {
+        if (workers < 1) throw new RuntimeException("workers must be positive.");
+        if (blockSize < 1) throw new RuntimeException("blockSize must be positive.");
+        this.voices = voices;
+        this.workers = workers;
+        this.blockSize = blockSize;
+        partials = new double[workers][blockSize];
+        start = new CyclicBarrier(workers);
+        done = new CyclicBarrier(workers);
+
+        helpers = new Thread[workers - 1];
+        for (int w = 1; w < workers; w++) {
+            final int part = w;
+            helpers[w - 1] = new Thread(new Runnable() {
+                public void run() {
+                    while (true) {
+                        await(start);
+                        if (closed) return;
+                        renderPart(part, frames);
+                        await(done);
+                    }
+                }
+            }, "MixingPipeline-" + w);
+            helpers[w - 1].setDaemon(true);
+            helpers[w - 1].start();
+        }
+    }
+
+    // wait for every thread of the pipeline to reach the barrier
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering.", e);
+        }
+        catch (BrokenBarrierException e) {
+            throw new RuntimeException("Rendering was abandoned.", e);
+        }
+    }
+
+    // render one part of the voices into its partial buffer
+    private void renderPart(int part, int frames) {
+        double[] partial = partials[part];
+        java.util.Arrays.fill(partial, 0, frames, 0.0);
+        voices.render(partial, 0, frames, part, workers);
+    }
+
+    // renders the next block of the voices into out[0..blockSize-1]
+    public void render(double[] out) {
+        render(out, 0, blockSize);
+    }
+
+    // renders the next frames <= blockSize samples of the voices into
+    // out[off..off+frames-1], so that a block can be split where a note
+    // starts
+    public void render(double[] out, int off, int frames) {
+        if (closed) throw new RuntimeException("Pipeline is closed.");
+        if (frames < 0 || frames > blockSize || off < 0 || off > out.length - frames)
+            throw new IndexOutOfBoundsException();
+        if (filled == 0) blockStart = System.nanoTime();
+
+        // the barriers publish the pool and frames to the helpers and back
+        this.frames = frames;
+        await(start);
+        renderPart(0, frames);
+        await(done);
+
+        // mix the partials
+        System.arraycopy(partials[0], 0, out, off, frames);
+        for (int w = 1; w < workers; w++) {
+            double[] partial = partials[w];
+            for (int i = 0; i < frames; i++)
+                out[off + i] += partial[i];
+        }
+        voices.release(frames);
+
+        // account once per block, not per piece
+        filled += frames;
+        if (filled >= blockSize) {
+            filled -= blockSize;
+            blocks++;
+            long now = System.nanoTime();
+            if (now - blockStart > 1e9 * blockSize / StdAudio.SAMPLE_RATE)
+                deadlineMisses++;
+            blockStart = now;
+        }
+    }
+
+    // returns the number of samples in a block
+    public int blockSize() {
+        return blockSize;
+    }
+
+    // returns the number of blocks rendered
+    public long blocks() {
+        return blocks;
+    }
+
+    // returns the number of blocks that took longer to render than to play
+    public long deadlineMisses() {
+        return deadlineMisses;
+    }
+
+    // stops the helper threads
+    public void close() {
+        if (closed) return;
+        closed = true;
+        await(start);
+    }
+
+    // renders a few seconds of many sounding strings and reports how
+    // much faster than real time the pipeline runs
+    // usage: java MixingPipeline 1000 4 256 10
+    public static void main(String[] args) {
+        int count = Integer.parseInt(args[0]);
+        int workers = Integer.parseInt(args[1]);
+        int blockSize = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+
+        // strings spread over the piano range, all plucked
+        GuitarString[] strings = new GuitarString[count];
+        for (int i = 0; i < count; i++)
+            strings[i] = new GuitarString(27.5 * Math.pow(2, (i % 88) / 12.0));
+        VoicePool voices = new VoicePool(strings, count, 0.0);
+        for (int i = 0; i < count; i++)
+            voices.pluck(i);
+
+        MixingPipeline pipeline = new MixingPipeline(voices, workers, blockSize);
+        double[] block = new double[blockSize];
+        int samples = seconds * StdAudio.SAMPLE_RATE;
+        Stopwatch timer = new Stopwatch();
+        double checksum = 0.0;
+        for (int t = 0; t < samples; t += blockSize) {
+            pipeline.render(block);
+            checksum += block[0];
+        }
+        double elapsed = timer.elapsedTime();
+        pipeline.close();
+        StdOut.printf("%d voices on %d threads: %.2fx real time, %d of %d blocks"
+                      + " missed their deadline (checksum %.3f)\n",
+                      count, workers, seconds / elapsed, pipeline.deadlineMisses(),
+                      pipeline.blocks(), checksum);
+    }
+}
@@ -0,0 +1,160 @@
+import edu.princeton.cs.algs4.StdOut;
+
+public class RangeMaxIndex {
+
+    // private instance variables
+    private final long[] weights;   // weights in index order
+    private final int[] tree;       // segment tree of argmax indices
+    private final int n;            // number of weights
+
+    // creates a range-maximum index over the weights of the given terms
+    public RangeMaxIndex(Term[] terms) {
+        // throw exception if argument array is null
+        if (terms == null) throw new java.lang.NullPointerException();
+
+        n = terms.length;
+        weights = new long[n];
+        for (int i = 0; i < n; i++)
+            weights[i] = terms[i].weight();
+
+        // leaves live at tree[n..2n-1], internal nodes below them
+        tree = new int[2*n];
+        for (int i = 0; i < n; i++)
+            tree[n + i] = i;
+        for (int i = n - 1; i > 0; i--)
+            tree[i] = better(tree[2*i], tree[2*i + 1]);
+    }
+
+    // returns the number of weights in the index
+    public int size() {
+        return n;
+    }
+
+    // of the two indices, the one with the larger weight,
+    // or the smaller index if the weights are equal
+    private int better(int i, int j) {
+        if      (weights[i] > weights[j]) return i;
+        else if (weights[i] < weights[j]) return j;
+        else                              return Math.min(i, j);
+    }
+
+    // returns the index of the largest weight in [lo, hi],
+    // taking the smallest such index on ties
+    public int argmax(int lo, int hi) {
+        // throw exception if range is invalid
+        if (lo < 0 || hi >= n || lo > hi) throw new
+            java.lang.IndexOutOfBoundsException("Invalid range.");
+
+        int best = lo;
+        // walk up from both leaves, folding in the nodes inside the range
+        for (int l = lo + n, r = hi + n + 1; l < r; l /= 2, r /= 2) {
+            if (l % 2 == 1) best = better(best, tree[l++]);
+            if (r % 2 == 1) best = better(best, tree[--r]);
+        }
+        return best;
+    }
+
+    // returns the indices of the k largest weights in [lo, hi] in
+    // descending order of weight (smaller index first on ties), by
+    // repeatedly splitting the range around its maximum. Takes time
+    // proportional to k log k + k log n, whatever the size of the range.
+    public int[] top(int lo, int hi, int k) {
+        // throw exceptions for corner cases
+        if (lo < 0 || hi >= n || lo > hi) throw new
+            java.lang.IndexOutOfBoundsException("Invalid range.");
+        if (k < 0) throw new java.lang.IllegalArgumentException();
+
+        int count = Math.min(k, hi - lo + 1);
+        int[] top = new int[count];
+        if (count == 0) return top;
+
+        // heap of ranges ordered by their maximum; every range taken
+        // off the heap puts back at most two, so it never holds more
+        // than count + 1 ranges
+        int[] heapLo = new int[count + 1];
+        int[] heapHi = new int[count + 1];
+        int[] heapMax = new int[count + 1];
+        heapLo[0] = lo;
+        heapHi[0] = hi;
+        heapMax[0] = argmax(lo, hi);
+        int size = 1;
+
+        for (int t = 0; t < count; t++) {
+            // take the range with the best maximum
+            int rangeLo = heapLo[0];
+            int rangeHi = heapHi[0];
+            int max = heapMax[0];
+            top[t] = max;
+
+            // replace it with the last range and restore heap order
+            size--;
+            heapLo[0] = heapLo[size];
+            heapHi[0] = heapHi[size];
+            heapMax[0] = heapMax[size];
+            sink(heapLo, heapHi, heapMax, size);
+
+            // put back the parts on either side of the maximum
+            if (rangeLo < max) {
+                heapLo[size] = rangeLo;
+                heapHi[size] = max - 1;
+                heapMax[size] = argmax(rangeLo, max - 1);
+                swim(heapLo, heapHi, heapMax, size);
+                size++;
+            }
+            if (max < rangeHi) {
+                heapLo[size] = max + 1;
+                heapHi[size] = rangeHi;
+                heapMax[size] = argmax(max + 1, rangeHi);
+                swim(heapLo, heapHi, heapMax, size);
+                size++;
+            }
+        }
+        return top;
+    }
+
+    // heap helpers for the parallel range arrays, best maximum at the root
+    private void swim(int[] heapLo, int[] heapHi, int[] heapMax, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (better(heapMax[parent], heapMax[i]) == heapMax[parent]) break;
+            exch(heapLo, heapHi, heapMax, i, parent);
+            i = parent;
+        }
+    }
+
+    private void sink(int[] heapLo, int[] heapHi, int[] heapMax, int size) {
+        int i = 0;
+        while (2*i + 1 < size) {
+            int child = 2*i + 1;
+            if (child + 1 < size &&
+                better(heapMax[child], heapMax[child + 1]) == heapMax[child + 1])
+                child++;
+            if (better(heapMax[i], heapMax[child]) == heapMax[i]) break;
+            exch(heapLo, heapHi, heapMax, i, child);
+            i = child;
+        }
+    }
+
+    private static void exch(int[] heapLo, int[] heapHi, int[] heapMax,
+                             int i, int j) {
+        int swap = heapLo[i];  heapLo[i] = heapLo[j];   heapLo[j] = swap;
+        swap = heapHi[i];      heapHi[i] = heapHi[j];   heapHi[j] = swap;
+        swap = heapMax[i];     heapMax[i] = heapMax[j]; heapMax[j] = swap;
+    }
+
+    // unit tests this class
+    public static void main(String[] args) {
+        Term[] terms = {
+            new Term("a", 5), new Term("b", 9), new Term("c", 1),
+            new Term("d", 9), new Term("e", 7), new Term("f", 3)
+        };
+        RangeMaxIndex index = new RangeMaxIndex(terms);
+        StdOut.println("argmax(0, 5) = " + index.argmax(0, 5));
+        StdOut.println("argmax(2, 4) = " + index.argmax(2, 4));
+        StdOut.println("argmax(4, 5) = " + index.argmax(4, 5));
+
+        int[] top = index.top(0, 5, 4);
+        for (int i : top)
+            StdOut.println(terms[i]);
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Renders a score of plucked notes to a 16-bit mono WAV file as fast as
+// the machine allows, without playing it. Each track is its own
+// 88-string instrument with a VoicePool. The tracks render each second
+// of audio in parallel, one task per track; the seconds are mixed,
+// clipped and written through a FileChannel in order. Notes start at
+// the exact sample of their time.
+//
+// Score format, one note per line (blank lines and lines starting with #
+// are skipped):
+//   track time note velocity
+// where track is a non-negative integer, time is in seconds, note is a
+// MIDI note number from 21 (A0, 27.5 Hz) to 108 (C8), and velocity is
+// from 0 to 127.
+public class ScoreRenderer {
+    // lowest MIDI note of the 88-string instrument
+    private static final int LOWEST_NOTE = 21;
+    // samples rendered by every track before mixing
+    private static final int CHUNK = StdAudio.SAMPLE_RATE;
+    // samples rendered between checks for the next note
+    private static final int BLOCK = 512;
+    // bytes in the header of a WAV file
+    private static final int WAV_HEADER = 44;
+
+    // the notes of one track, in time order, and its instrument
+    private static class Track {
+        private long[] starts = new long[16];       // sample of each note
+        private int[] strings = new int[16];        // string of each note
+        private double[] velocities = new double[16];
+        private int n;                              // number of notes
+        private int next;                           // next note to pluck
+        private VoicePool voices;
+        private double[] buffer;                    // this track's chunk
+
+        private void add(long start, int string, double velocity) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * n);
+                strings = Arrays.copyOf(strings, 2 * n);
+                velocities = Arrays.copyOf(velocities, 2 * n);
+            }
+            starts[n] = start;
+            strings[n] = string;
+            velocities[n] = velocity;
+            n++;
+        }
+
+        // sort the notes by start, then build the instrument
+        private void prepare() {
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            final long[] keys = starts;
+            Arrays.sort(order, new java.util.Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(keys[a], keys[b]);
+                }
+            });
+            long[] sortedStarts = new long[n];
+            int[] sortedStrings = new int[n];
+            double[] sortedVelocities = new double[n];
+            for (int i = 0; i < n; i++) {
+                sortedStarts[i] = starts[order[i]];
+                sortedStrings[i] = strings[order[i]];
+                sortedVelocities[i] = velocities[order[i]];
+            }
+            starts = sortedStarts;
+            strings = sortedStrings;
+            velocities = sortedVelocities;
+
+            GuitarString[] instrument = new GuitarString[88];
+            for (int i = 0; i < instrument.length; i++)
+                instrument[i] = new GuitarString(27.5 * Math.pow(2, i / 12.0));
+            voices = new VoicePool(instrument);
+            buffer = new double[CHUNK];
+        }
+
+        // render samples [start, start + frames) into buffer, plucking
+        // each note at its own sample
+        private void render(long start, int frames) {
+            Arrays.fill(buffer, 0, frames, 0.0);
+            int off = 0;
+            while (off < frames) {
+                while (next < n && starts[next] <= start + off) {
+                    voices.pluck(strings[next], velocities[next]);
+                    next++;
+                }
+                int length = Math.min(BLOCK, frames - off);
+                if (next < n) length = (int) Math.min(length, starts[next] - start - off);
+                voices.render(buffer, off, length);
+                off += length;
+            }
+        }
+
+        // has the track played every note and fallen silent?
+        private boolean finished() {
+            return next == n && voices.size() == 0;
+        }
+    }
+
+    // reads the tracks of a score file
+    private static Track[] read(String filename) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not read " + filename, e);
+        }
+        List<Track> tracks = new ArrayList<Track>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length != 4)
+                throw new RuntimeException(filename + ":" + (i + 1) + ": expected track time note velocity");
+            int track = Integer.parseInt(fields[0]);
+            double time = Double.parseDouble(fields[1]);
+            int note = Integer.parseInt(fields[2]);
+            double velocity = Double.parseDouble(fields[3]);
+            if (track < 0 || time < 0 || note < LOWEST_NOTE || note >= LOWEST_NOTE + 88
+                || velocity < 0 || velocity > 127)
+                throw new RuntimeException(filename + ":" + (i + 1) + ": value out of range");
+            while (tracks.size() <= track) tracks.add(new Track());
+            tracks.get(track).add(Math.round(time * StdAudio.SAMPLE_RATE),
+                                  note - LOWEST_NOTE, velocity / 127);
+        }
+        return tracks.toArray(new Track[tracks.size()]);
+    }
+
+    // renders the score file on the given number of threads to a WAV
+    // file and returns the number of samples written
+    public static long render(String score, String filename, int threads) {
+        return render(read(score), filename, threads);
+    }
+
+    // render the tracks to a WAV file and return the number of samples written
+    private static long render(Track[] tracks, String filename, int threads) {
+        if (threads < 1) throw new RuntimeException("threads must be positive.");
+        for (Track track : tracks)
+            track.prepare();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(2 * CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            double[] mix = new double[CHUNK];
+            long written = 0;
+            channel.position(WAV_HEADER);
+
+            while (true) {
+                boolean finished = true;
+                for (Track track : tracks)
+                    finished &= track.finished();
+                if (finished) break;
+
+                // render the next chunk of every track in parallel
+                final long start = written;
+                List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (final Track track : tracks) {
+                    tasks.add(new Callable<Void>() {
+                        public Void call() {
+                            track.render(start, CHUNK);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Void> future : pool.invokeAll(tasks))
+                    future.get();
+
+                // mix, clip to [-1, 1] as StdAudio does, and write
+                Arrays.fill(mix, 0.0);
+                for (Track track : tracks)
+                    for (int i = 0; i < CHUNK; i++)
+                        mix[i] += track.buffer[i];
+                out.clear();
+                for (int i = 0; i < CHUNK; i++) {
+                    double sample = Math.max(-1.0, Math.min(1.0, mix[i]));
+                    out.putShort((short) (32767 * sample));
+                }
+                out.flip();
+                while (out.hasRemaining())
+                    channel.write(out);
+                written += CHUNK;
+            }
+
+            // the header goes last, once the length is known
+            channel.write(header(written), 0);
+            return written;
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not write " + filename, e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering.", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // header of a 16-bit mono PCM WAV file of the given number of samples
+    private static ByteBuffer header(long samples) {
+        if (2 * samples > Integer.MAX_VALUE - WAV_HEADER)
+            throw new RuntimeException("Score is too long for a WAV file.");
+        int bytes = (int) (2 * samples);
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(WAV_HEADER - 8 + bytes);
+        header.put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16);                          // size of the format chunk
+        header.putShort((short) 1);                 // PCM
+        header.putShort((short) 1);                 // mono
+        header.putInt(StdAudio.SAMPLE_RATE);
+        header.putInt(2 * StdAudio.SAMPLE_RATE);    // bytes per second
+        header.putShort((short) 2);                 // bytes per sample
+        header.putShort((short) 16);                // bits per sample
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(bytes);
+        header.flip();
+        return header;
+    }
+
+    // a random score of the given number of tracks and seconds,
+    // a note every quarter second on each track
+    private static Track[] random(int count, int seconds) {
+        Track[] tracks = new Track[count];
+        for (int t = 0; t < count; t++) {
+            tracks[t] = new Track();
+            for (int q = 0; q < 4 * seconds; q++)
+                tracks[t].add(q * StdAudio.SAMPLE_RATE / 4 + StdRandom.uniform(100),
+                              24 + StdRandom.uniform(40), 0.1 + 0.2 * StdRandom.uniform());
+        }
+        return tracks;
+    }
+
+    // renders a score and reports the real-time factor
+    // usage: java ScoreRenderer score.txt out.wav [threads]
+    //        java ScoreRenderer random 16 60 out.wav [threads]
+    public static void main(String[] args) {
+        Track[] tracks;
+        String filename;
+        int threads;
+        if (args[0].equals("random")) {
+            tracks = random(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            filename = args[3];
+            threads = args.length > 4 ? Integer.parseInt(args[4])
+                                      : Runtime.getRuntime().availableProcessors();
+        }
+        else {
+            tracks = read(args[0]);
+            filename = args[1];
+            threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        }
+
+        Stopwatch timer = new Stopwatch();
+        long samples = render(tracks, filename, threads);
+        double elapsed = timer.elapsedTime();
+        double seconds = (double) samples / StdAudio.SAMPLE_RATE;
+        StdOut.printf("%d tracks, %.1f s of audio in %.2f s on %d threads: %.1fx real time\n",
+                      tracks.length, seconds, elapsed, threads, seconds / elapsed);
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// A lock-free ring buffer of doubles for exactly one producer thread and
+// one consumer thread, such as a synthesis thread handing audio to a
+// playback thread. It has the RingBuffer API plus non-throwing offer()
+// in single and bulk forms and a bulk poll(). Every double, NaN included,
+// is a valid item, so poll() reports how many items it took rather than
+// returning a marker value; poll(a, off, 1) takes a single item.
+//
+// The producer owns the tail and the consumer owns the head. Each side
+// publishes its counter with lazySet() (a release store) after touching
+// the array, and reads the other side's counter with get() (an acquire
+// load), so an item is always written before it can be seen. Each side
+// caches the last value it saw of the other's counter, so it only reads
+// the other's line when the buffer looks full or empty. Each counter and
+// its owner's cached value are padded onto a cache line of their own.
+public class SpscRingBuffer {
+    private final double[] rb;          // ring buffer array
+    private final int mask;             // rb.length - 1
+    private final int capacity;         // largest number of items
+    // next item to dequeue, and the consumer's view of tail
+    private final Sequence head = new Sequence();
+    // next slot to enqueue, and the producer's view of head
+    private final Sequence tail = new Sequence();
+
+    // padding before a counter; superclass fields are laid out first
+    private static class PaddingBefore {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    // a counter, and the last value its owner saw of the other counter
+    private static class Counter extends PaddingBefore {
+        volatile long value;
+        long cached;
+    }
+
+    // a counter padded on both sides so that it shares its cache line
+    // with nothing the other thread writes
+    private static class Sequence extends Counter {
+        private static final AtomicLongFieldUpdater<Counter> VALUE =
+            AtomicLongFieldUpdater.newUpdater(Counter.class, "value");
+        private long p9, p10, p11, p12, p13, p14, p15;
+
+        // acquire load of the counter
+        private long get() {
+            return value;
+        }
+
+        // release store of the counter
+        private void lazySet(long x) {
+            VALUE.lazySet(this, x);
+        }
+    }
+
+    //  creates an empty ring buffer with the specified capacity
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new RuntimeException("Capacity must be between 1 and 2^30.");
+        rb = new double[Integer.highestOneBit(2 * capacity - 1)];
+        mask = rb.length - 1;
+        this.capacity = capacity;
+    }
+
+    //  returns the number of items currently in this ring buffer; exact
+    //  only when neither thread is changing it
+    public int size() {
+        long h = head.get();
+        return (int) (tail.get() - h);
+    }
+
+    //  is this ring buffer empty (size equals zero)?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    //  is this ring buffer full (size equals capacity)?
+    public boolean isFull() {
+        return size() == capacity;
+    }
+
+    //  adds item x to the end of this ring buffer if there is room;
+    //  call only from the producer thread
+    public boolean offer(double x) {
+        long t = tail.get();
+        if (t - tail.cached == capacity) {
+            tail.cached = head.get();
+            if (t - tail.cached == capacity) return false;
+        }
+        rb[(int) t & mask] = x;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    //  adds as many of a[off..off+len-1] as fit to the end of this ring
+    //  buffer and returns how many; call only from the producer thread
+    public int offer(double[] a, int off, int len) {
+        if (len < 0 || off < 0 || off > a.length - len)
+            throw new IndexOutOfBoundsException();
+        long t = tail.get();
+        if (capacity - (t - tail.cached) < len) tail.cached = head.get();
+        int n = (int) Math.min(len, capacity - (t - tail.cached));
+        int start = (int) t & mask;
+        int first = Math.min(n, rb.length - start);
+        System.arraycopy(a, off, rb, start, first);
+        System.arraycopy(a, off + first, rb, 0, n - first);
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    //  adds item x to the end of this ring buffer;
+    //  call only from the producer thread
+    public void enqueue(double x) {
+        if (!offer(x)) throw new RuntimeException("Buffer is full.");
+    }
+
+    //  deletes up to len items at the front of this ring buffer, copies
+    //  them to a[off..], and returns how many; call only from the
+    //  consumer thread
+    public int poll(double[] a, int off, int len) {
+        if (len < 0 || off < 0 || off > a.length - len)
+            throw new IndexOutOfBoundsException();
+        long h = head.get();
+        if (head.cached - h < len) head.cached = tail.get();
+        int n = (int) Math.min(len, head.cached - h);
+        int start = (int) h & mask;
+        int first = Math.min(n, rb.length - start);
+        System.arraycopy(rb, start, a, off, first);
+        System.arraycopy(rb, 0, a, off + first, n - first);
+        head.lazySet(h + n);
+        return n;
+    }
+
+    //  deletes and returns the item at the front of this ring buffer;
+    //  call only from the consumer thread
+    public double dequeue() {
+        long h = head.get();
+        if (h == tail.get()) throw new RuntimeException("Buffer is empty.");
+        double x = rb[(int) h & mask];
+        head.lazySet(h + 1);
+        return x;
+    }
+
+    //  returns the item at the front of this ring buffer;
+    //  call only from the consumer thread
+    public double peek() {
+        long h = head.get();
+        if (h == tail.get()) throw new RuntimeException("Buffer is empty.");
+        return rb[(int) h & mask];
+    }
+
+    // stress tests this class with a producer and a consumer thread, then
+    // prints a histogram of the time items spend in the buffer
+    // usage: java SpscRingBuffer 1024 10000000
+    public static void main(String[] args) throws InterruptedException {
+        int capacity = Integer.parseInt(args[0]);
+        final int items = Integer.parseInt(args[1]);
+        final SpscRingBuffer buffer = new SpscRingBuffer(capacity);
+
+        // the producer sends 0, 1, 2, ... in blocks of random size
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                double[] block = new double[64];
+                int sent = 0;
+                while (sent < items) {
+                    int len = Math.min(items - sent, 1 + StdRandom.uniform(block.length));
+                    for (int i = 0; i < len; i++) block[i] = sent + i;
+                    int offered = 0;
+                    while (offered < len) {
+                        int n = buffer.offer(block, offered, len - offered);
+                        if (n == 0) Thread.yield();
+                        offered += n;
+                    }
+                    sent += len;
+                }
+            }
+        });
+
+        // the consumer checks that they arrive in order, alternating
+        // single-item and full-block reads
+        Stopwatch timer = new Stopwatch();
+        producer.start();
+        double[] block = new double[64];
+        long expected = 0;
+        while (expected < items) {
+            int len = expected % 2 == 0 ? 1 : block.length;
+            int n = buffer.poll(block, 0, len);
+            if (n == 0) Thread.yield();
+            for (int i = 0; i < n; i++, expected++)
+                if (block[i] != expected) throw new RuntimeException(
+                    "expected " + expected + " but got " + block[i]);
+        }
+        producer.join();
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("%d items in order in %.3f s: %.1f M items/sec\n",
+                      items, elapsed, items / elapsed / 1e6);
+
+        // NaN and the infinities are items like any other
+        double[] special = { Double.NaN, Double.POSITIVE_INFINITY, -0.0 };
+        for (double x : special)
+            buffer.enqueue(x);
+        if (buffer.poll(block, 0, block.length) != special.length
+            || !Double.isNaN(block[0]) || block[1] != Double.POSITIVE_INFINITY
+            || Double.compare(block[2], -0.0) != 0)
+            throw new RuntimeException("special values did not round trip.");
+
+        // latency: the producer sends its send time, the consumer
+        // counts receive - send in power-of-two nanosecond buckets
+        final long start = System.nanoTime();
+        final int samples = Math.min(items, 1000000);
+        Thread timed = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < samples; i++) {
+                    while (!buffer.offer((double) (System.nanoTime() - start)))
+                        Thread.yield();
+                    // leave gaps so the buffer is mostly empty, as in playback
+                    if (i % 64 == 0) Thread.yield();
+                }
+            }
+        });
+        timed.start();
+        long[] histogram = new long[64];
+        double[] sent = new double[1];
+        for (int i = 0; i < samples; i++) {
+            while (buffer.poll(sent, 0, 1) == 0) Thread.yield();
+            long latency = Math.max(1, System.nanoTime() - start - (long) sent[0]);
+            histogram[63 - Long.numberOfLeadingZeros(latency)]++;
+        }
+        timed.join();
+        long cumulative = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] == 0) continue;
+            cumulative += histogram[b];
+            StdOut.printf("< %12d ns %9d %6.2f%%\n", 2L << b, histogram[b],
+                          100.0 * cumulative / samples);
+        }
+    }
+}
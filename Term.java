@@ -28,8 +28,11 @@ public class Term implements Comparable<Term> {
     // Helper reverse-weight-order comparator
     private static class ReverseWeightOrder implements Comparator<Term> {
         public int compare(Term a, Term b) {
-            long diff = b.weight - a.weight;
-            return (int) diff;            
+            // compare directly, since the difference of two large
+            // weights does not fit in an int
+            if      (a.weight > b.weight) return -1;
+            else if (a.weight < b.weight) return 1;
+            else                          return 0;
         }
     }
     
@@ -49,18 +52,44 @@ public class Term implements Comparable<Term> {
         }
         
         public int compare(Term a, Term b) {
-            // get the lengths of each term's query
-            int aLength = a.query.length();
-            int bLength = b.query.length(); 
-            
-            // compare the queries in the four different cases 
-            if (aLength < r && bLength < r) return a.query.compareTo(b.query);
-            else if (aLength < r) return a.query.compareTo(b.query.substring(0, r));
-            else if (bLength < r) return a.query.substring(0, r).compareTo(b.query);
-            else return a.query.substring(0, r).compareTo(b.query.substring(0, r));
+            // compare character by character in place
+            // instead of building substrings
+            int aLength = Math.min(a.query.length(), r);
+            int bLength = Math.min(b.query.length(), r);
+            int n = Math.min(aLength, bLength);
+            for (int i = 0; i < n; i++) {
+                char aChar = a.query.charAt(i);
+                char bChar = b.query.charAt(i);
+                if (aChar != bChar) return aChar - bChar;
+            }
+            return aLength - bLength;
         }
     }
     
+    // Compares the first prefix.length() characters of this term's query
+    // to the given prefix, without allocating any objects. Returns zero
+    // if the query starts with the prefix.
+    public int compareToPrefix(String prefix) {
+        int r = prefix.length();
+        int length = Math.min(query.length(), r);
+        for (int i = 0; i < length; i++) {
+            char qChar = query.charAt(i);
+            char pChar = prefix.charAt(i);
+            if (qChar != pChar) return qChar - pChar;
+        }
+        return length - r;
+    }
+    
+    
+    // Returns the query string of this term.
+    public String query() {
+        return query;
+    }
+    
+    // Returns the weight of this term.
+    public long weight() {
+        return weight;
+    }
     
     // Compares the two terms in lexicographic order by query.
     public int compareTo(Term that) {        
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+// Loads a dictionary file in the format read by Autocomplete.main (the
+// number of terms, then one "weight<tab>query" line per term) by
+// splitting it into byte ranges on line boundaries, parsing the ranges
+// on several threads into primitive columns, and sorting the resulting
+// terms with Arrays.parallelSort. A line that is not a non-negative
+// weight that fits in a long, a tab and a query is rejected with its
+// byte offset in the file.
+public class TermLoader {
+
+    // largest byte range mapped at once
+    private static final long MAX_CHUNK = 1L << 30;
+
+    // the terms parsed from one byte range, as parallel columns
+    private static class Chunk {
+        private long[] weights = new long[1024];
+        private String[] queries = new String[1024];
+        private int n;
+
+        private void add(long weight, String query) {
+            if (n == weights.length) {
+                weights = Arrays.copyOf(weights, 2 * n);
+                queries = Arrays.copyOf(queries, 2 * n);
+            }
+            weights[n] = weight;
+            queries[n] = query;
+            n++;
+        }
+    }
+
+    // loads the terms in the given file using the given number of
+    // threads, returning them in lexicographic order
+    public static Term[] load(final String filename, int threads) {
+        // throw exceptions for corner cases
+        if (filename == null) throw new java.lang.NullPointerException();
+        if (threads < 1) throw new java.lang.IllegalArgumentException();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // the header line holds the number of terms
+            long headerEnd = endOfLine(channel, 0, size);
+            ByteBuffer header = ByteBuffer.allocate((int) headerEnd);
+            channel.read(header, 0);
+            int N = Integer.parseInt(new String(header.array(),
+                                     StandardCharsets.US_ASCII).trim());
+
+            // split the rest into ranges that end on line boundaries
+            long body = Math.min(size, headerEnd + 1);
+            int ranges = (int) Math.max(threads, (size - body) / MAX_CHUNK + 1);
+            long[] bounds = new long[ranges + 1];
+            bounds[0] = body;
+            for (int i = 1; i < ranges; i++) {
+                long guess = Math.max(bounds[i - 1], body + (size - body) * i / ranges);
+                bounds[i] = Math.min(size, endOfLine(channel, guess, size) + 1);
+            }
+            bounds[ranges] = size;
+
+            // parse the ranges in parallel
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+            try {
+                for (int i = 0; i < ranges; i++) {
+                    final long start = bounds[i];
+                    final MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, start, bounds[i + 1] - start);
+                    futures.add(pool.submit(new Callable<Chunk>() {
+                        public Chunk call() {
+                            return parse(buffer, filename, start);
+                        }
+                    }));
+                }
+
+                // gather the columns into terms
+                Term[] terms = new Term[N];
+                int n = 0;
+                for (Future<Chunk> future : futures) {
+                    Chunk chunk = future.get();
+                    if (n + chunk.n > N) throw new IllegalArgumentException(
+                        filename + " holds more terms than its header says.");
+                    for (int i = 0; i < chunk.n; i++)
+                        terms[n++] = new Term(chunk.queries[i], chunk.weights[i]);
+                }
+                if (n != N) throw new IllegalArgumentException(
+                    filename + " holds " + n + " terms, not " + N + ".");
+
+                Arrays.parallelSort(terms);
+                return terms;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading.", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + filename, e);
+        }
+    }
+
+    // loads the terms using one thread per available processor
+    public static Term[] load(String filename) {
+        return load(filename, Runtime.getRuntime().availableProcessors());
+    }
+
+    // position of the first newline at or after from, or size if none
+    private static long endOfLine(FileChannel channel, long from, long size)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++)
+                if (buffer.get(i) == '\n') return position + i;
+            position += read;
+        }
+        return size;
+    }
+
+    // parse the "weight<tab>query" lines in the buffer, which holds
+    // the bytes of the file from position start
+    private static Chunk parse(MappedByteBuffer buffer, String filename, long start) {
+        Chunk chunk = new Chunk();
+        byte[] query = new byte[256];
+        int limit = buffer.limit();
+        int i = 0;
+        while (i < limit) {
+            // skip blank space before the weight, including empty lines
+            byte b = buffer.get(i);
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') { i++; continue; }
+
+            // read the weight, which needs at least one digit
+            int first = i;
+            long weight = 0;
+            while (i < limit && (b = buffer.get(i)) >= '0' && b <= '9') {
+                int digit = b - '0';
+                if (weight > (Long.MAX_VALUE - digit) / 10)
+                    throw malformed(filename, start + first, "weight does not fit in a long");
+                weight = 10 * weight + digit;
+                i++;
+            }
+            if (i == first)
+                throw malformed(filename, start + first, "expected a non-negative weight");
+
+            // scan past the tab
+            if (i == limit || buffer.get(i) != '\t')
+                throw malformed(filename, start + i, "expected a tab after the weight");
+            i++;
+
+            // read the rest of the line as the query
+            int length = 0;
+            while (i < limit && (b = buffer.get(i)) != '\n') {
+                if (length == query.length) query = Arrays.copyOf(query, 2 * length);
+                query[length++] = b;
+                i++;
+            }
+            if (length > 0 && query[length - 1] == '\r') length--;
+            chunk.add(weight, new String(query, 0, length, StandardCharsets.UTF_8));
+        }
+        return chunk;
+    }
+
+    // the exception for a malformed line, at the given byte of the file
+    private static IllegalArgumentException malformed(String filename, long position,
+                                                      String message) {
+        return new IllegalArgumentException(filename + ": byte " + position + ": "
+                                            + message + ".");
+    }
+
+    // loads a dictionary and reports the load throughput
+    // usage: java TermLoader wiktionary.txt 4
+    public static void main(String[] args) throws IOException {
+        String filename = args[0];
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        long bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                 StandardOpenOption.READ)) {
+            bytes = channel.size();
+        }
+
+        Stopwatch timer = new Stopwatch();
+        Term[] terms = load(filename, threads);
+        double elapsed = timer.elapsedTime();
+        StdOut.printf("%d terms, %.1f MB in %.3f s with %d threads: %.1f MB/s\n",
+                      terms.length, bytes / 1e6, elapsed, threads,
+                      bytes / 1e6 / elapsed);
+    }
+}
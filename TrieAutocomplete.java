@@ -0,0 +1,294 @@
+import java.util.Arrays;
+import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
+
+public class TrieAutocomplete {
+
+    // private instance variables
+    private final Node root;        // root of the ternary search tree
+    private final Term[] rootTop;   // best terms over the whole dictionary
+    private final Term empty;       // heaviest term with the empty query, or null
+    private final int maxK;         // number of best terms kept per node
+
+    // ternary search tree node
+    private static class Node {
+        private char c;             // character on the link into this node
+        private Node left, mid, right;
+        private Term term;          // term whose query ends at this node
+        private Term[] top;         // best terms whose query has this prefix
+        private Term best;          // best term in this subtree
+        private int size;           // number of terms in this subtree
+    }
+
+    // Initializes the data structure from the given array of terms,
+    // precomputing the best maxK matches for every prefix.
+    public TrieAutocomplete(Term[] terms, int maxK) {
+        // throw exceptions for corner cases
+        if (terms == null) throw new java.lang.NullPointerException();
+        if (maxK < 1) throw new java.lang.IllegalArgumentException();
+        this.maxK = maxK;
+
+        // sort a copy so the tree can be built from the median outwards,
+        // which keeps the left and right links balanced
+        Term[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        this.root = build(null, sorted, 0, sorted.length - 1);
+
+        // the empty query has no node, so its heaviest term is kept apart;
+        // in sorted order the empty queries come first
+        Term heaviest = null;
+        for (int i = 0; i < sorted.length && sorted[i].query().length() == 0; i++)
+            if (heaviest == null || sorted[i].weight() > heaviest.weight())
+                heaviest = sorted[i];
+        this.empty = heaviest;
+
+        // fill in the best matches of every node
+        Term[] top = root == null ? new Term[0] : computeTop(root);
+        if (empty != null) top = merge(new Term[] { empty }, top);
+        rootTop = top;
+    }
+
+    // insert the median of terms[lo..hi], then both halves
+    private Node build(Node x, Term[] terms, int lo, int hi) {
+        if (lo > hi) return x;
+        int mid = lo + (hi - lo) / 2;
+        x = put(x, terms[mid]);
+        x = build(x, terms, lo, mid - 1);
+        x = build(x, terms, mid + 1, hi);
+        return x;
+    }
+
+    // insert the term into the tree rooted at x, returning the root
+    private Node put(Node x, Term term) {
+        String query = term.query();
+        // the empty query has no node; the constructor keeps it in empty
+        if (query.length() == 0) return x;
+
+        Node top = x;
+        Node parent = null;
+        int link = 0;               // 0 = left, 1 = mid, 2 = right
+        int d = 0;
+        while (true) {
+            char c = query.charAt(d);
+            if (x == null) {
+                x = new Node();
+                x.c = c;
+                if      (parent == null) top = x;
+                else if (link == 0)      parent.left = x;
+                else if (link == 1)      parent.mid = x;
+                else                     parent.right = x;
+            }
+            parent = x;
+            if      (c < x.c)                  { x = x.left;  link = 0; }
+            else if (c > x.c)                  { x = x.right; link = 2; }
+            else if (d < query.length() - 1)   { x = x.mid;   link = 1; d++; }
+            else {
+                // a repeated query keeps its heaviest term
+                if (x.term == null || term.weight() > x.term.weight())
+                    x.term = term;
+                return top;
+            }
+        }
+    }
+
+    // set x.top and x.size for the subtree at x and
+    // return the best terms over the whole subtree
+    private Term[] computeTop(Node x) {
+        Term[] midTop = new Term[0];
+        int midSize = 0;
+        if (x.mid != null) {
+            midTop = computeTop(x.mid);
+            midSize = x.mid.size;
+        }
+
+        // best matches for the prefix ending at this node
+        if (x.term == null) x.top = midTop;
+        else x.top = merge(new Term[] { x.term }, midTop);
+
+        // combine with the siblings for the parent
+        Term[] all = x.top;
+        x.size = midSize + (x.term == null ? 0 : 1);
+        if (x.left != null) {
+            all = merge(all, computeTop(x.left));
+            x.size += x.left.size;
+        }
+        if (x.right != null) {
+            all = merge(all, computeTop(x.right));
+            x.size += x.right.size;
+        }
+        x.best = all.length == 0 ? null : all[0];
+        return all;
+    }
+
+    // merge two arrays sorted by rank, keeping at most maxK terms
+    private Term[] merge(Term[] a, Term[] b) {
+        return merge(a, b, maxK);
+    }
+
+    // merge two arrays sorted by rank, keeping at most k terms
+    private static Term[] merge(Term[] a, Term[] b, int k) {
+        if (b.length == 0 && a.length <= k) return a;
+        if (a.length == 0 && b.length <= k) return b;
+        int n = Math.min(k, a.length + b.length);
+        Term[] merged = new Term[n];
+        int i = 0;
+        int j = 0;
+        for (int t = 0; t < n; t++) {
+            if      (i == a.length)                 merged[t] = b[j++];
+            else if (j == b.length)                 merged[t] = a[i++];
+            else if (rank(a[i], b[j]) <= 0)         merged[t] = a[i++];
+            else                                    merged[t] = b[j++];
+        }
+        return merged;
+    }
+
+    // descending order of weight, ties broken by lexicographic order,
+    // which is the order produced by Autocomplete.allMatches()
+    private static int rank(Term a, Term b) {
+        if      (a.weight() > b.weight()) return -1;
+        else if (a.weight() < b.weight()) return 1;
+        else                              return a.compareTo(b);
+    }
+
+    // return the node at the end of the prefix, or null if no
+    // query starts with the prefix
+    private Node find(String prefix) {
+        Node x = root;
+        int d = 0;
+        while (x != null) {
+            char c = prefix.charAt(d);
+            if      (c < x.c)                   x = x.left;
+            else if (c > x.c)                   x = x.right;
+            else if (d < prefix.length() - 1) { x = x.mid; d++; }
+            else                                return x;
+        }
+        return null;
+    }
+
+    // Returns the k heaviest terms that start with the given prefix,
+    // in descending order of weight. Takes time proportional to the
+    // length of the prefix plus k.
+    public Term[] topMatches(String prefix, int k) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0 || k > maxK) throw new java.lang.IllegalArgumentException(
+            "k must be between 0 and " + maxK + ".");
+
+        Term[] top;
+        if (prefix.length() == 0) top = rootTop;
+        else {
+            Node x = find(prefix);
+            if (x == null) return new Term[0];
+            top = x.top;
+        }
+        return Arrays.copyOf(top, Math.min(k, top.length));
+    }
+
+    // Returns the k heaviest terms that start with a string within
+    // maxEdits insertions, deletions or substitutions of the given prefix,
+    // in descending order of weight. Walks the tree with one row of the
+    // edit distance table per level (a Levenshtein automaton), pruning a
+    // branch as soon as every entry of its row exceeds maxEdits.
+    public Term[] fuzzyMatches(String prefix, int k, int maxEdits) {
+        // throw exceptions for corner cases
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (k < 0 || k > maxK) throw new java.lang.IllegalArgumentException(
+            "k must be between 0 and " + maxK + ".");
+        if (maxEdits < 0) throw new java.lang.IllegalArgumentException();
+        // the pruning below compares against the k-th term found
+        if (k == 0) return new Term[0];
+
+        // the empty path is already within reach of every term
+        int m = prefix.length();
+        if (m <= maxEdits) return Arrays.copyOf(rootTop, Math.min(k, rootTop.length));
+
+        // a path longer than m + maxEdits is always too far away,
+        // so one row per level of that depth is enough
+        int[][] rows = new int[m + maxEdits + 1][m + 1];
+        for (int j = 0; j <= m; j++)
+            rows[0][j] = j;
+        Term[] top = fuzzyMatches(root, prefix, rows, 0, k, maxEdits, new Term[0]);
+        return Arrays.copyOf(top, Math.min(k, top.length));
+    }
+
+    // add the matches under x to top, where rows[depth] is the row
+    // for the path leading to x
+    private static Term[] fuzzyMatches(Node x, String prefix, int[][] rows,
+                                       int depth, int k, int maxEdits, Term[] top) {
+        if (x == null) return top;
+        // nothing in this subtree can displace the k terms found so far
+        if (top.length == k && (x.best == null || rank(x.best, top[k - 1]) > 0))
+            return top;
+
+        // follow x first, then the sibling with the heavier terms,
+        // so that the bound above prunes as much as possible
+        top = fuzzyPath(x, prefix, rows, depth, k, maxEdits, top);
+        Node first = x.left;
+        Node second = x.right;
+        if (first == null || (second != null && rank(second.best, first.best) < 0)) {
+            first = x.right;
+            second = x.left;
+        }
+        top = fuzzyMatches(first, prefix, rows, depth, k, maxEdits, top);
+        top = fuzzyMatches(second, prefix, rows, depth, k, maxEdits, top);
+        return top;
+    }
+
+    // add the matches whose path goes through x itself
+    private static Term[] fuzzyPath(Node x, String prefix, int[][] rows,
+                                    int depth, int k, int maxEdits, Term[] top) {
+        // nothing through x can displace the k terms found so far
+        if (top.length == k && (x.top.length == 0 || rank(x.top[0], top[k - 1]) > 0))
+            return top;
+
+        // extend the path by x.c
+        int m = prefix.length();
+        int[] row = rows[depth];
+        int[] next = rows[depth + 1];
+        next[0] = row[0] + 1;
+        int min = next[0];
+        for (int j = 1; j <= m; j++) {
+            int cost = prefix.charAt(j - 1) == x.c ? 0 : 1;
+            next[j] = Math.min(Math.min(row[j] + 1, next[j - 1] + 1),
+                               row[j - 1] + cost);
+            min = Math.min(min, next[j]);
+        }
+
+        // every term below x matches, and none below x.mid can do better,
+        // so take the precomputed best terms and stop
+        if (next[m] <= maxEdits) return merge(top, x.top, k);
+        if (min <= maxEdits && depth + 2 < rows.length)
+            top = fuzzyMatches(x.mid, prefix, rows, depth + 1, k, maxEdits, top);
+        return top;
+    }
+
+    // Returns the number of terms that start with the given prefix.
+    public int numberOfMatches(String prefix) {
+        // throw exception if prefix string is null
+        if (prefix == null) throw new java.lang.NullPointerException();
+        if (prefix.length() == 0)
+            return (root == null ? 0 : root.size) + (empty == null ? 0 : 1);
+
+        Node x = find(prefix);
+        if (x == null) return 0;
+        int count = x.term == null ? 0 : 1;
+        if (x.mid != null) count += x.mid.size;
+        return count;
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        // read in the terms from a file
+        String filename = args[0];
+        Term[] terms = TermLoader.load(filename);
+
+        // read in queries from standard input and print out the top k matching terms
+        int k = Integer.parseInt(args[1]);
+        TrieAutocomplete autocomplete = new TrieAutocomplete(terms, k);
+        while (StdIn.hasNextLine()) {
+            String prefix = StdIn.readLine();
+            for (Term term : autocomplete.topMatches(prefix, k))
+                StdOut.println(term);
+        }
+    }
+}
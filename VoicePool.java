@@ -0,0 +1,206 @@
+// Keeps track of which strings of an instrument are sounding, so that
+// rendering costs time in proportion to the notes being played rather
+// than the number of strings. A string joins the pool when it is plucked
+// and leaves it once its energy falls below a threshold. When more than
+// maxVoices strings would sound at once, the one plucked longest ago
+// makes room: it is faded out over a few milliseconds and then muted,
+// since cutting a string off mid-cycle is an audible click.
+public class VoicePool {
+    // samples rendered between checks of each voice's energy
+    private static final int CHECK_INTERVAL = 4096;
+    // default energy below which a voice is inaudible, about -80 dB
+    public static final double SILENT = 1e-8;
+    // samples over which a stolen voice fades out, 5 ms at 44,100 Hz
+    public static final int RELEASE = 220;
+
+    private final GuitarString[] strings;   // every string of the instrument
+    private final int maxVoices;            // polyphony limit
+    private final double threshold;         // energy of a silent voice
+    private final int[] active;             // sounding strings, oldest pluck first
+    private int size;                       // number of sounding strings
+    private final boolean[] sounding;       // is string i in active?
+    private int sinceCheck;                 // samples rendered since the last check
+    private long stolen;                    // voices cut off by the polyphony limit
+    private final int[] fading;             // stolen strings still fading out
+    private final int[] fadeLeft;           // samples left in each fade
+    private int fades;                      // number of fading strings
+
+    // creates a pool over the given strings with at most maxVoices sounding
+    public VoicePool(GuitarString[] strings, int maxVoices, double threshold) {
+        if (maxVoices < 1) throw new RuntimeException("maxVoices must be positive.");
+        if (threshold < 0) throw new RuntimeException("threshold must not be negative.");
+        this.strings = strings;
+        this.maxVoices = maxVoices;
+        this.threshold = threshold;
+        active = new int[maxVoices];
+        sounding = new boolean[strings.length];
+        fading = new int[maxVoices];
+        fadeLeft = new int[maxVoices];
+    }
+
+    // creates a pool in which every string may sound at once
+    public VoicePool(GuitarString[] strings) {
+        this(strings, Math.max(1, strings.length), SILENT);
+    }
+
+    // plucks string i and makes it the newest voice, stealing
+    // the oldest voice if the pool is full
+    public void pluck(int i) {
+        pluck(i, 1.0);
+    }
+
+    // plucks string i with the given velocity, as pluck(i) does
+    public void pluck(int i, double velocity) {
+        if (sounding[i]) remove(indexOf(i));
+        else {
+            // a string plucked again while fading out starts over
+            for (int f = 0; f < fades; f++)
+                if (fading[f] == i) removeFade(f);
+            if (size == maxVoices) steal();
+        }
+        strings[i].pluck(velocity);
+        active[size++] = i;
+        sounding[i] = true;
+    }
+
+    // position of string i in active
+    private int indexOf(int i) {
+        for (int v = 0; v < size; v++)
+            if (active[v] == i) return v;
+        throw new RuntimeException("String " + i + " is not sounding.");
+    }
+
+    // remove the voice at position v, keeping the rest in pluck order
+    private void remove(int v) {
+        System.arraycopy(active, v + 1, active, v, size - v - 1);
+        size--;
+    }
+
+    // moves the oldest voice to the fading strings; if as many strings
+    // are already fading as there are voices, the oldest fade is cut short
+    private void steal() {
+        int i = active[0];
+        sounding[i] = false;
+        remove(0);
+        if (fades == fading.length) {
+            strings[fading[0]].mute();
+            removeFade(0);
+        }
+        fading[fades] = i;
+        fadeLeft[fades] = RELEASE;
+        fades++;
+        stolen++;
+    }
+
+    // remove the fade at position f, keeping the rest in order
+    private void removeFade(int f) {
+        System.arraycopy(fading, f + 1, fading, f, fades - f - 1);
+        System.arraycopy(fadeLeft, f + 1, fadeLeft, f, fades - f - 1);
+        fades--;
+    }
+
+    // adds the next frames samples of every sounding string to
+    // out[off..off+frames-1], then lets go of the silent ones
+    public void render(double[] out, int off, int frames) {
+        render(out, off, frames, 0, 1);
+        release(frames);
+    }
+
+    // adds the next frames samples of the sounding strings in part
+    // 0 <= part < parts to out[off..off+frames-1]; each part takes every
+    // parts-th voice, so low and high strings spread evenly, and every
+    // parts-th fading string. Different parts may be rendered on
+    // different threads at once, as long as nothing else uses the pool
+    // until all of them are done.
+    public void render(double[] out, int off, int frames, int part, int parts) {
+        for (int v = part; v < size; v += parts)
+            strings[active[v]].render(out, off, frames);
+        // fading strings ramp linearly from their current gain to zero
+        for (int f = part; f < fades; f += parts)
+            strings[fading[f]].render(out, off, Math.min(frames, fadeLeft[f]),
+                                      (double) fadeLeft[f] / RELEASE, -1.0 / RELEASE);
+    }
+
+    // counts frames more samples as rendered by every part, mutes the
+    // strings that have finished fading out and, every so often, lets go
+    // of the strings that have fallen silent
+    public void release(int frames) {
+        int kept = 0;
+        for (int f = 0; f < fades; f++) {
+            if (fadeLeft[f] <= frames) strings[fading[f]].mute();
+            else {
+                fading[kept] = fading[f];
+                fadeLeft[kept++] = fadeLeft[f] - frames;
+            }
+        }
+        fades = kept;
+
+        sinceCheck += frames;
+        if (sinceCheck < CHECK_INTERVAL) return;
+        sinceCheck = 0;
+        kept = 0;
+        for (int v = 0; v < size; v++) {
+            int i = active[v];
+            if (strings[i].energy() < threshold) {
+                strings[i].mute();
+                sounding[i] = false;
+            }
+            else active[kept++] = i;
+        }
+        size = kept;
+    }
+
+    // returns the number of strings sounding
+    public int size() {
+        return size;
+    }
+
+    // returns the number of voices cut off by the polyphony limit
+    public long stolen() {
+        return stolen;
+    }
+
+    // unit tests this class
+    public static void main(String[] args) {
+        GuitarString[] strings = new GuitarString[88];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = new GuitarString(27.5 * Math.pow(2, i / 12.0));
+        VoicePool pool = new VoicePool(strings, 4, SILENT);
+
+        // a chord of six notes on a four-voice pool steals the first two
+        int[] chord = { 39, 43, 46, 51, 55, 58 };
+        for (int i : chord)
+            pool.pluck(i);
+        StdOut.println("sounding = " + pool.size() + ", stolen = " + pool.stolen());
+
+        // a stolen voice fades out instead of stopping dead: on a
+        // one-voice pool, a silent pluck leaves only the fade to hear
+        VoicePool single = new VoicePool(strings, 1, SILENT);
+        single.pluck(39);
+        double[] fade = new double[512];
+        single.render(fade, 0, fade.length);
+        java.util.Arrays.fill(fade, 0.0);
+        single.pluck(40, 0.0);
+        single.render(fade, 0, fade.length);
+        if (fade[0] == 0.0) throw new RuntimeException("Stolen voice stopped dead.");
+        for (int j = 0; j < fade.length; j++) {
+            double limit = 0.5 * (RELEASE - j) / RELEASE;
+            if (Math.abs(fade[j]) > Math.max(0.0, limit) + 1e-12) throw new RuntimeException(
+                "Stolen voice is " + fade[j] + " at sample " + j + " of its fade.");
+        }
+        StdOut.println("stolen voice faded out over " + RELEASE + " samples");
+
+        // render until every voice has died away
+        double[] block = new double[512];
+        int seconds = 0;
+        for (int t = 0; pool.size() > 0; t += block.length) {
+            java.util.Arrays.fill(block, 0.0);
+            pool.render(block, 0, block.length);
+            if (t / 44100 > seconds) {
+                seconds = t / 44100;
+                StdOut.println(seconds + " s: sounding = " + pool.size());
+            }
+        }
+        StdOut.println("silent after " + (seconds + 1) + " s");
+    }
+}